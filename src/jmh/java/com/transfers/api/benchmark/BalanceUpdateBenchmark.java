@@ -0,0 +1,69 @@
+package com.transfers.api.benchmark;
+
+import com.transfers.api.ledger.Balances;
+import com.transfers.api.ledger.PeriodAggregates;
+import com.transfers.api.ledger.VelocityLimits;
+import com.transfers.api.util.Operation;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.transfers.api.ledger.TransactionAmounts.accountId;
+import static com.transfers.api.ledger.TransactionAmounts.effectiveAmount;
+import static com.transfers.api.util.Consts.*;
+
+/**
+ * The repository's balance check-and-update steps for a deposit followed by a withdrawal: read the account id
+ * and signed amount, check funds, overflow and a velocity rule, reserve, then commit and record the aggregates.
+ * Run with the GC profiler; {@code gc.alloc.rate.norm} should stay at zero bytes per operation.
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec@benchmark -Djmh.args="BalanceUpdateBenchmark -prof gc"
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BalanceUpdateBenchmark {
+
+    private final Balances balances = new Balances();
+    private final PeriodAggregates aggregates = new PeriodAggregates();
+    private final VelocityLimits velocityLimits = new VelocityLimits(new JsonArray()
+            .add(new JsonObject().put("window.seconds", 60).put("max.amount", Long.MAX_VALUE)));
+    private final long timestamp = System.currentTimeMillis() / 1000;
+    private JsonObject deposit;
+    private JsonObject withdrawal;
+
+    @Setup
+    public void setUp() {
+        balances.set(1000, 0);
+        deposit = new JsonObject()
+                .put(ACCOUNT_ID, 1000L)
+                .put(AMOUNT, 100L)
+                .put(OPERATION, Operation.deposit.name());
+        withdrawal = deposit.copy().put(OPERATION, Operation.withdraw.name());
+    }
+
+    @Benchmark
+    public long depositAndWithdraw() {
+        return checkAndUpdate(deposit) + checkAndUpdate(withdrawal);
+    }
+
+    private long checkAndUpdate(JsonObject operation) {
+        long accountId = accountId(operation, ACCOUNT_ID);
+        long effectiveAmount = effectiveAmount(operation, accountId);
+        if (effectiveAmount < 0 && balances.available(accountId) < -effectiveAmount
+                || !balances.canAdd(accountId, effectiveAmount)
+                || effectiveAmount < 0 && !velocityLimits.tryRecord(accountId, -effectiveAmount, System.currentTimeMillis())) {
+            return -1;
+        }
+        balances.reserve(accountId, effectiveAmount);
+        long balance = balances.commit(accountId, effectiveAmount);
+        aggregates.record(accountId, timestamp, effectiveAmount);
+        return balance;
+    }
+}
@@ -0,0 +1,73 @@
+package com.transfers.api.benchmark;
+
+import com.transfers.api.MainVerticle;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonObject;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The service running in the benchmark JVM, with a blocking HTTP helper for setup and measured calls.
+ */
+class BenchmarkApp {
+
+    final Vertx vertx = Vertx.vertx();
+    final int httpPort;
+    final HttpClient httpClient;
+
+    BenchmarkApp(JsonObject config) throws Exception {
+        httpPort = freePort();
+        httpClient = vertx.createHttpClient(new HttpClientOptions()
+                .setDefaultPort(httpPort)
+                .setKeepAlive(true)
+                .setPipelining(true)
+                .setPipeliningLimit(1000));
+        CompletableFuture<String> deployed = new CompletableFuture<>();
+        vertx.deployVerticle(MainVerticle.class.getName(), new DeploymentOptions().setConfig(config.put("http.port", httpPort)), result -> {
+            if (result.succeeded()) {
+                deployed.complete(result.result());
+            } else {
+                deployed.completeExceptionally(result.cause());
+            }
+        });
+        deployed.get();
+    }
+
+    CompletableFuture<JsonObject> send(HttpMethod method, String uri, JsonObject body) {
+        CompletableFuture<JsonObject> response = new CompletableFuture<>();
+        httpClient.request(method, uri, resp -> resp.bodyHandler(buffer -> response.complete(buffer.toJsonObject())))
+                .exceptionHandler(response::completeExceptionally)
+                .putHeader("content-type", "application/json")
+                .end(body == null ? Buffer.buffer() : body.toBuffer());
+        return response;
+    }
+
+    long createAccount(long initialBalance) throws Exception {
+        long accountId = send(HttpMethod.POST, "/accounts", new JsonObject().put("name", "benchmark")).get().getLong("data");
+        if (initialBalance > 0) {
+            send(HttpMethod.POST, "/accounts/" + accountId + "/balance", new JsonObject()
+                    .put("operation", "deposit")
+                    .put("amount", initialBalance)).get();
+        }
+        return accountId;
+    }
+
+    void close() throws Exception {
+        CompletableFuture<Void> closed = new CompletableFuture<>();
+        vertx.close(result -> closed.complete(null));
+        closed.get();
+    }
+
+    static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
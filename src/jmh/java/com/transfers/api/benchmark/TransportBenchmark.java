@@ -0,0 +1,132 @@
+package com.transfers.api.benchmark;
+
+import com.transfers.api.binary.BinaryProtocolVerticle;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.NetSocket;
+import io.vertx.core.parsetools.RecordParser;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Round trips over the JSON REST API against the same commands over the binary TCP transport.
+ * <p>
+ * Each invocation sends {@code batch} pipelined commands on one connection and waits for all replies, so
+ * {@code batch = 1} shows per-request latency and bigger batches show throughput. Scores are invocations
+ * per second; multiply by {@code batch} for commands per second.
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec@benchmark -Djmh.args="TransportBenchmark"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransportBenchmark {
+
+    @Param({"1", "100"})
+    public int batch;
+
+    private BenchmarkApp app;
+    private NetSocket socket;
+    private long accountId;
+    private final AtomicLong correlationIds = new AtomicLong();
+    private final Map<Long, CompletableFuture<Short>> pending = new ConcurrentHashMap<>();
+
+    @Setup
+    public void setUp() throws Exception {
+        int binaryPort = BenchmarkApp.freePort();
+        app = new BenchmarkApp(new JsonObject().put("binary.port", binaryPort));
+        accountId = app.createAccount(0);
+        CompletableFuture<NetSocket> connected = new CompletableFuture<>();
+        app.vertx.createNetClient().connect(binaryPort, "localhost", result -> connected.complete(result.result()));
+        socket = connected.get();
+        RecordParser parser = RecordParser.newFixed(4);
+        parser.handler(new Handler<Buffer>() {
+            private boolean expectingLength = true;
+
+            @Override
+            public void handle(Buffer record) {
+                if (expectingLength) {
+                    parser.fixedSizeMode(record.getInt(0));
+                } else {
+                    pending.remove(record.getLong(0)).complete(record.getShort(8));
+                    parser.fixedSizeMode(4);
+                }
+                expectingLength = !expectingLength;
+            }
+        });
+        socket.handler(parser);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        app.close();
+    }
+
+    @Benchmark
+    public Object jsonBalance() throws Exception {
+        CompletableFuture<?>[] replies = new CompletableFuture[batch];
+        for (int i = 0; i < batch; i++) {
+            replies[i] = app.send(HttpMethod.GET, "/accounts/" + accountId + "/balance", null);
+        }
+        return CompletableFuture.allOf(replies).get();
+    }
+
+    @Benchmark
+    public Object binaryBalance() throws Exception {
+        CompletableFuture<?>[] replies = new CompletableFuture[batch];
+        for (int i = 0; i < batch; i++) {
+            long correlationId = correlationIds.incrementAndGet();
+            replies[i] = expect(correlationId);
+            socket.write(Buffer.buffer(21)
+                    .appendInt(17)
+                    .appendByte(BinaryProtocolVerticle.BALANCE_QUERY)
+                    .appendLong(correlationId)
+                    .appendLong(accountId));
+        }
+        return CompletableFuture.allOf(replies).get();
+    }
+
+    @Benchmark
+    public Object jsonDeposit() throws Exception {
+        CompletableFuture<?>[] replies = new CompletableFuture[batch];
+        for (int i = 0; i < batch; i++) {
+            replies[i] = app.send(HttpMethod.POST, "/accounts/" + accountId + "/balance", new JsonObject()
+                    .put("operation", "deposit")
+                    .put("amount", 1));
+        }
+        return CompletableFuture.allOf(replies).get();
+    }
+
+    @Benchmark
+    public Object binaryDeposit() throws Exception {
+        CompletableFuture<?>[] replies = new CompletableFuture[batch];
+        for (int i = 0; i < batch; i++) {
+            long correlationId = correlationIds.incrementAndGet();
+            replies[i] = expect(correlationId);
+            socket.write(Buffer.buffer(29)
+                    .appendInt(25)
+                    .appendByte(BinaryProtocolVerticle.DEPOSIT)
+                    .appendLong(correlationId)
+                    .appendLong(accountId)
+                    .appendLong(1));
+        }
+        return CompletableFuture.allOf(replies).get();
+    }
+
+    private CompletableFuture<Short> expect(long correlationId) {
+        CompletableFuture<Short> reply = new CompletableFuture<>();
+        pending.put(correlationId, reply);
+        return reply;
+    }
+}
@@ -0,0 +1,133 @@
+package com.transfers.api.benchmark;
+
+import com.transfers.api.validation.BodySchema;
+import com.transfers.api.validation.Validation;
+import io.vertx.core.Handler;
+import io.vertx.core.MultiMap;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.RoutingContext;
+import io.vertx.ext.web.api.validation.HTTPRequestValidationHandler;
+import io.vertx.ext.web.api.validation.ValidationException;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.transfers.api.util.Consts.RECEIVER_ACCOUNT_ID;
+import static com.transfers.api.util.Consts.SENDER_ACCOUNT_ID;
+
+/**
+ * Validation of a transfer body with the compiled {@link BodySchema} against the JSON schema handler it
+ * replaced, including the route handler reading the body afterwards. The handlers run directly on a minimal
+ * routing context, so HTTP costs do not hide the difference.
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec@benchmark -Djmh.args="ValidationBenchmark -prof gc"
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ValidationBenchmark {
+
+    private static final String TRANSFER_JSON_SCHEMA = "{\"type\":\"object\",\"properties\":{\"amount\":{\"type\":\"number\",\"multipleOf\":1.0,\"minimum\":1},\"senderAccountId\":{\"type\":\"number\",\"minimum\":1},\"receiverAccountId\":{\"type\":\"number\",\"minimum\":1}},\"required\":[\"senderAccountId\",\"receiverAccountId\",\"amount\"]}";
+
+    private final Buffer body = new JsonObject()
+            .put(SENDER_ACCOUNT_ID, 1)
+            .put(RECEIVER_ACCOUNT_ID, 2)
+            .put("amount", 1000)
+            .toBuffer();
+    private final MultiMap headers = MultiMap.caseInsensitiveMultiMap().add("content-type", "application/json");
+    private Handler<RoutingContext> jsonSchema;
+    private Handler<RoutingContext> bodySchema;
+
+    @Setup
+    public void setUp() {
+        // the transfer validation before BodySchema: the custom validator and the route read the body again
+        jsonSchema = HTTPRequestValidationHandler.create()
+                .addCustomValidatorFunction(rc -> {
+                    JsonObject transfer = rc.getBodyAsJson();
+                    Long senderAccountId = transfer.getLong(SENDER_ACCOUNT_ID);
+                    if (senderAccountId != null && senderAccountId.equals(transfer.getLong(RECEIVER_ACCOUNT_ID))) {
+                        throw new ValidationException("Sender and receiver accounts must be different");
+                    }
+                })
+                .addJsonBodySchema(TRANSFER_JSON_SCHEMA);
+        bodySchema = Validation.transferValidationHandler();
+    }
+
+    @Benchmark
+    public Object jsonSchema() {
+        RoutingContext rc = routingContext();
+        jsonSchema.handle(rc);
+        return rc.getBodyAsJson();
+    }
+
+    @Benchmark
+    public Object bodySchema() {
+        RoutingContext rc = routingContext();
+        bodySchema.handle(rc);
+        return BodySchema.parsedBody(rc);
+    }
+
+    /**
+     * A POST of the transfer body with only the parts of the routing context the validation handlers use.
+     */
+    private RoutingContext routingContext() {
+        Map<String, Object> data = new HashMap<>();
+        HttpServerRequest request = (HttpServerRequest) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{HttpServerRequest.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "method":
+                            return HttpMethod.POST;
+                        case "getHeader":
+                            return headers.get(args[0].toString());
+                        case "headers":
+                            return headers;
+                        case "params":
+                        case "formAttributes":
+                            return MultiMap.caseInsensitiveMultiMap();
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        return (RoutingContext) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{RoutingContext.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "request":
+                            return request;
+                        case "getBody":
+                            return body;
+                        case "getBodyAsString":
+                            return body.toString();
+                        case "getBodyAsJson":
+                            return body.toJsonObject();
+                        case "pathParams":
+                            return Collections.emptyMap();
+                        case "queryParams":
+                            return MultiMap.caseInsensitiveMultiMap();
+                        case "data":
+                            return data;
+                        case "get":
+                            return data.get(args[0]);
+                        case "put":
+                            data.put((String) args[0], args[1]);
+                            return proxy;
+                        case "next":
+                            return null;
+                        case "fail":
+                            throw new IllegalStateException("validation failed", (Throwable) args[args.length - 1]);
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}
@@ -0,0 +1,48 @@
+package com.transfers.api.benchmark;
+
+import com.transfers.api.ledger.VelocityLimits;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency distribution of the velocity check a debit pays in the repository, with the two rules shown in the
+ * README, over a spread of accounts so the rings are not all in cache. {@code accounts = 1} shows the cost
+ * of a single hot account.
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec@benchmark -Djmh.args="VelocityLimitsBenchmark"
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VelocityLimitsBenchmark {
+
+    @Param({"1", "100000"})
+    public int accounts;
+
+    private VelocityLimits velocityLimits;
+
+    @Setup
+    public void setUp() {
+        velocityLimits = new VelocityLimits(new JsonArray()
+                .add(new JsonObject().put("window.seconds", 3600).put("max.amount", Long.MAX_VALUE))
+                .add(new JsonObject().put("window.seconds", 86400).put("buckets", 24).put("max.amount", Long.MAX_VALUE)));
+        long now = System.currentTimeMillis();
+        for (long accountId = 1; accountId <= accounts; accountId++) {
+            velocityLimits.tryRecord(accountId, 1, now);
+        }
+    }
+
+    @Benchmark
+    public boolean tryRecord() {
+        long accountId = 1 + ThreadLocalRandom.current().nextInt(accounts);
+        return velocityLimits.tryRecord(accountId, 1, System.currentTimeMillis());
+    }
+}
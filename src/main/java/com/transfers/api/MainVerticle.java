@@ -1,11 +1,22 @@
 package com.transfers.api;
 
+import com.transfers.api.binary.BinaryProtocolVerticle;
+import com.transfers.api.ratelimit.RateLimiter;
+import com.transfers.api.replication.ReplicationFollowerVerticle;
+import com.transfers.api.replication.ReplicationLeaderVerticle;
+import com.transfers.api.replication.ReplicationState;
+import com.transfers.api.stream.BalanceStream;
+import com.transfers.api.tracing.SpanExporterVerticle;
+import com.transfers.api.tracing.Trace;
 import com.transfers.api.util.Operation;
+import com.transfers.api.validation.BodySchema;
 import com.transfers.api.validation.Validation;
 import io.vertx.core.*;
+import io.vertx.core.eventbus.DeliveryOptions;
 import io.vertx.core.eventbus.Message;
 import io.vertx.core.eventbus.ReplyException;
 import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.Router;
 import io.vertx.ext.web.RoutingContext;
@@ -14,27 +25,98 @@ import io.vertx.ext.web.api.validation.ValidationException;
 import io.vertx.ext.web.handler.BodyHandler;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static com.transfers.api.util.Address.*;
 import static com.transfers.api.util.Consts.*;
 
 public class MainVerticle extends AbstractVerticle {
 
+    private static final String API_KEY_HEADER = "X-API-Key";
+    private static final String TRACE = "trace";
+
     @Override
-    public void start() {
+    public void start(Promise<Void> startPromise) {
         Router router = Router.router(vertx);
+        boolean tracing = config().containsKey("tracing.sample.rate");
+        if (tracing) {
+            double sampleRate = config().getDouble("tracing.sample.rate");
+            router.route().handler(rc -> {
+                Trace trace = Trace.start(vertx, rc.request().getHeader(Trace.TRACEPARENT), sampleRate);
+                if (trace != null) {
+                    rc.put(TRACE, trace);
+                    rc.addBodyEndHandler(v -> trace.finish(rc.request().method() + " " + rc.normalisedPath(), System.nanoTime(), new JsonObject()
+                            .put("http.method", rc.request().method().name())
+                            .put("http.path", rc.normalisedPath())
+                            .put("http.status_code", String.valueOf(rc.response().getStatusCode()))));
+                }
+                rc.next();
+            });
+        }
         router.route().handler(BodyHandler.create());
-        vertx.deployVerticle(RepositoryVerticle.class.getName());
-        vertx.createHttpServer()
-                .requestHandler(router)
-                .listen(config().getInteger("http.port", 8888));
+        deploy(RepositoryVerticle.class.getName())
+                .compose(repository -> tracing
+                        ? deploy(SpanExporterVerticle.class.getName())
+                        : Future.<String>succeededFuture())
+                .compose(exporter -> config().containsKey("binary.port")
+                        ? deploy(BinaryProtocolVerticle.class.getName())
+                        : Future.<String>succeededFuture())
+                .compose(binary -> deployReplication())
+                .compose(replication -> listen(router))
+                .setHandler(startPromise);
+
+        // a follower serves reads only, and only while it is close enough to the leader
+        long maxStaleness = config().getLong("replication.max.staleness.ms", 2000L);
+        router.route().handler(rc -> {
+            if (!ReplicationState.isFollower(vertx)) {
+                rc.next();
+            } else if (rc.request().method() != HttpMethod.GET && !rc.normalisedPath().equals("/replication/promote")) {
+                replyWithError(503, "Read-only replica", rc);
+            } else if (rc.request().method() == HttpMethod.GET && ReplicationState.staleness(vertx) > maxStaleness) {
+                replyWithError(503, "Replica is stale", rc);
+            } else {
+                rc.next();
+            }
+        });
+
+        // per-client token bucket limits, checked before validation
+        JsonObject rateLimits = config().getJsonObject("rate.limits", new JsonObject());
+        List<RateLimiter> rateLimiters = new ArrayList<>();
+        Set<String> apiKeys = config().getJsonArray("rate.limit.api.keys", new JsonArray()).stream()
+                .map(String.class::cast)
+                .collect(Collectors.toSet());
+        rateLimits.forEach(limit -> {
+            String[] route = limit.getKey().split(" ", 2);
+            JsonObject limitConfig = (JsonObject) limit.getValue();
+            RateLimiter rateLimiter = new RateLimiter(limitConfig.getLong("capacity"),
+                    limitConfig.getDouble("refill.per.second"),
+                    limitConfig.getInteger("max.clients", 1_000_000));
+            rateLimiters.add(rateLimiter);
+            router.route(HttpMethod.valueOf(route[0]), route[1]).handler(rc -> {
+                long waitNanos = rateLimiter.tryAcquire(clientKey(rc, apiKeys), System.nanoTime());
+                if (waitNanos == 0) {
+                    rc.next();
+                } else {
+                    rc.response().putHeader("retry-after", String.valueOf(TimeUnit.NANOSECONDS.toSeconds(waitNanos) + 1));
+                    replyWithError(429, "Too many requests", rc);
+                }
+            });
+        });
+        if (!rateLimiters.isEmpty()) {
+            vertx.setPeriodic(1000, timerId -> rateLimiters.forEach(rateLimiter -> rateLimiter.evictIdle(System.nanoTime())));
+        }
 
         // new account
         router.route().method(HttpMethod.POST).path("/accounts")
                 .handler(Validation.newAccountValidationHandler())
                 .handler(rc -> {
-                    JsonObject account = rc.getBodyAsJson();
-                    vertx.eventBus().request(NEW_ACCOUNT_ADDR, account, handleResponse(rc, 201));
+                    JsonObject account = BodySchema.parsedBody(rc);
+                    request(rc, NEW_ACCOUNT_ADDR, account, 201);
                 });
 
         // get account
@@ -42,7 +124,7 @@ public class MainVerticle extends AbstractVerticle {
                 .handler(Validation.getAccountValidationHandler())
                 .handler(rc -> {
                     Long id = retrievePathParam(rc, ID);
-                    vertx.eventBus().request(ACCOUNT_ADDR, id, handleResponse(rc, 200));
+                    request(rc, ACCOUNT_ADDR, id, 200);
                 });
 
         // balance operations: deposit or withdraw money
@@ -50,9 +132,9 @@ public class MainVerticle extends AbstractVerticle {
                 .handler(Validation.balanceValidationHandler())
                 .handler(rc -> {
                     Long accountId = retrievePathParam(rc, ID);
-                    JsonObject balanceOperationJsonObj = rc.getBodyAsJson()
+                    JsonObject balanceOperationJsonObj = BodySchema.parsedBody(rc)
                             .put(ACCOUNT_ID, accountId);
-                    vertx.eventBus().request(BALANCE_OPERATION_ADDR, balanceOperationJsonObj, handleResponse(rc, 200));
+                    request(rc, BALANCE_OPERATION_ADDR, balanceOperationJsonObj, 200);
                 });
 
         // get balance
@@ -60,16 +142,24 @@ public class MainVerticle extends AbstractVerticle {
                 .handler(Validation.getAccountValidationHandler())
                 .handler(rc -> {
                     Long accountId = retrievePathParam(rc, ID);
-                    vertx.eventBus().request(BALANCE_ADDR, accountId, handleResponse(rc, 200));
+                    request(rc, BALANCE_ADDR, accountId, 200);
+                });
+
+        // get balances of many accounts at once
+        router.route().method(HttpMethod.POST).path("/accounts/balances")
+                .handler(Validation.balancesValidationHandler())
+                .handler(rc -> {
+                    JsonArray accountIds = BodySchema.parsedBody(rc).getJsonArray(IDS);
+                    request(rc, BALANCES_ADDR, accountIds, 200);
                 });
 
         // new transfer
         router.route().method(HttpMethod.POST).path("/transfers")
                 .handler(Validation.transferValidationHandler())
                 .handler(rc -> {
-                    JsonObject transferJsonObj = rc.getBodyAsJson()
+                    JsonObject transferJsonObj = BodySchema.parsedBody(rc)
                             .put(OPERATION, Operation.transfer.name());
-                    vertx.eventBus().request(NEW_TRANSFER_ADDR, transferJsonObj, handleResponse(rc, 200));
+                    request(rc, NEW_TRANSFER_ADDR, transferJsonObj, 200);
                 });
 
         // get transactions related to specific account
@@ -77,13 +167,57 @@ public class MainVerticle extends AbstractVerticle {
                 .handler(Validation.getAccountValidationHandler())
                 .handler(rc -> {
                     Long accountId = retrievePathParam(rc, ID);
-                    vertx.eventBus().request(TRANSACTIONS_ADDR, accountId, handleResponse(rc, 200));
+                    request(rc, TRANSACTIONS_ADDR, accountId, 200);
+                });
+
+        // credit and debit totals per day or month
+        router.route().method(HttpMethod.GET).path("/accounts/:id/summary")
+                .handler(Validation.summaryValidationHandler())
+                .handler(rc -> {
+                    Long accountId = retrievePathParam(rc, ID);
+                    RequestParameters params = rc.get("parsedParameters");
+                    JsonObject summaryRequest = new JsonObject()
+                            .put(ACCOUNT_ID, accountId)
+                            .put(FROM, params.queryParameter(FROM).getString())
+                            .put(TO, params.queryParameter(TO).getString());
+                    if (params.queryParameter(GRANULARITY) != null) {
+                        summaryRequest.put(GRANULARITY, params.queryParameter(GRANULARITY).getString());
+                    }
+                    request(rc, SUMMARY_ADDR, summaryRequest, 200);
+                });
+
+        // recompute every balance from the ledger and report the accounts that do not match
+        DeliveryOptions verificationOptions = new DeliveryOptions()
+                .setSendTimeout(config().getLong("verification.timeout.ms", 600_000L));
+        router.route().method(HttpMethod.GET).path("/ledger/verification")
+                .handler(rc -> request(rc, VERIFY_LEDGER_ADDR, null, 200, verificationOptions));
+
+        // subscribe to balance changes of a set of accounts (Server-Sent Events)
+        BalanceStream balanceStream = new BalanceStream(vertx, config().getLong("stream.flush.interval.ms", 100L));
+        router.route().method(HttpMethod.GET).path("/balances/stream")
+                .handler(Validation.balanceStreamValidationHandler())
+                .handler(rc -> {
+                    String ids = ((RequestParameters) rc.get("parsedParameters")).queryParameter(IDS).getString();
+                    Set<Long> accountIds = Arrays.stream(ids.split(","))
+                            .map(Long::valueOf)
+                            .collect(Collectors.toSet());
+                    balanceStream.subscribe(rc, accountIds);
+                });
+
+        // promote a follower to leader
+        router.route().method(HttpMethod.POST).path("/replication/promote")
+                .handler(rc -> {
+                    if (ReplicationState.isFollower(vertx)) {
+                        request(rc, PROMOTE_ADDR, null, 200);
+                    } else {
+                        replyWithError(409, "Not a follower", rc);
+                    }
                 });
 
         router.errorHandler(400, rc -> {
             if (rc.failure() instanceof ValidationException) {
                 // Something went wrong during validation!
-                replyWithError(400, rc.failure(), rc);
+                replyWithError(400, rc.failure().getMessage(), rc);
             } else {
                 // Unknown 400 failure happened
                 rc.response().setStatusCode(400).end();
@@ -91,9 +225,39 @@ public class MainVerticle extends AbstractVerticle {
         });
     }
 
-    private void replyWithError(Integer status, Throwable error, RoutingContext rc) {
+    private Future<String> deploy(String verticleName) {
+        Promise<String> deployment = Promise.promise();
+        vertx.deployVerticle(verticleName, new DeploymentOptions().setConfig(config()), deployment);
+        return deployment.future();
+    }
+
+    private Future<String> deployReplication() {
+        String role = config().getString("replication.role");
+        if (ReplicationState.LEADER.equals(role)) {
+            return deploy(ReplicationLeaderVerticle.class.getName());
+        } else if (ReplicationState.FOLLOWER.equals(role)) {
+            return deploy(ReplicationFollowerVerticle.class.getName());
+        }
+        return Future.succeededFuture();
+    }
+
+    private Future<Void> listen(Router router) {
+        Promise<Void> listening = Promise.promise();
+        vertx.createHttpServer()
+                .requestHandler(router)
+                .listen(config().getInteger("http.port", 8888), server -> {
+                    if (server.succeeded()) {
+                        listening.complete();
+                    } else {
+                        listening.fail(server.cause());
+                    }
+                });
+        return listening.future();
+    }
+
+    private void replyWithError(Integer status, String reason, RoutingContext rc) {
         JsonObject response = new JsonObject()
-                .put("error", "Failure on " + rc.normalisedPath() + ", reason: " + error.getMessage());
+                .put("error", "Failure on " + rc.normalisedPath() + ", reason: " + reason);
         rc.response()
                 .putHeader("content-type", "application/json")
                 .setChunked(true)
@@ -114,17 +278,51 @@ public class MainVerticle extends AbstractVerticle {
                 .end();
     }
 
+    /**
+     * Sends a request to the repository and replies with its result. Sampled requests carry their trace
+     * along and record the time spent before dispatch (body, rate limit and validation handlers), the
+     * event-bus round trip and the response write.
+     */
+    private void request(RoutingContext rc, String address, Object body, Integer successStatus) {
+        request(rc, address, body, successStatus, new DeliveryOptions());
+    }
+
+    private void request(RoutingContext rc, String address, Object body, Integer successStatus, DeliveryOptions options) {
+        Trace trace = rc.get(TRACE);
+        if (trace == null) {
+            vertx.eventBus().request(address, body, options, handleResponse(rc, successStatus));
+            return;
+        }
+        long sentAt = System.nanoTime();
+        trace.record("validation", trace.startNanos(), sentAt);
+        vertx.eventBus().request(address, body, trace.deliveryOptions(new DeliveryOptions(options), sentAt), reply -> {
+            long repliedAt = System.nanoTime();
+            trace.record("request " + address, sentAt, repliedAt);
+            handleResponse(rc, successStatus).handle(reply);
+            trace.record("response", repliedAt, System.nanoTime());
+        });
+    }
+
     private <T>Handler<AsyncResult<Message<T>>> handleResponse(RoutingContext rc, Integer successStatus) {
         return resp -> {
             if (resp.succeeded()) {
                 replyWithBody(successStatus, resp.result().body(), rc);
             } else {
                 ReplyException cause = (ReplyException) resp.cause();
-                replyWithError(cause.failureCode(), resp.cause(), rc);
+                replyWithError(cause.failureCode(), cause.getMessage(), rc);
             }
         };
     }
 
+    /**
+     * Identifies a client by its address. The API key header is anyone's to set, so it is trusted only for keys
+     * issued in rate.limit.api.keys; other keys would let a client get a fresh bucket per request.
+     */
+    private String clientKey(RoutingContext rc, Set<String> apiKeys) {
+        String apiKey = rc.request().getHeader(API_KEY_HEADER);
+        return apiKey != null && apiKeys.contains(apiKey) ? API_KEY_HEADER + ":" + apiKey : rc.request().remoteAddress().host();
+    }
+
     private Long retrievePathParam(RoutingContext rc, String param) {
         return ((RequestParameters) rc.get("parsedParameters")).pathParameter(param).getInteger().longValue();
     }
@@ -1,18 +1,42 @@
 package com.transfers.api;
 
-import com.transfers.api.util.Operation;
+import com.transfers.api.ledger.Balances;
+import com.transfers.api.ledger.LedgerRows;
+import com.transfers.api.ledger.LedgerVerifier;
+import com.transfers.api.ledger.PeriodAggregates;
+import com.transfers.api.ledger.TransactionArchive;
+import com.transfers.api.ledger.TransactionArchive.Segment;
+import com.transfers.api.ledger.VelocityLimits;
+import com.transfers.api.replication.ReplicationFrames;
+import com.transfers.api.replication.ReplicationState;
+import com.transfers.api.stream.SubscriberCount;
+import com.transfers.api.tracing.Trace;
+import com.transfers.api.util.OrderedBlockingExecutor;
 import io.reactivex.Flowable;
-import io.reactivex.functions.Consumer;
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.DeliveryOptions;
 import io.vertx.core.eventbus.Message;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.shareddata.LocalMap;
 
 import java.time.Instant;
-import java.util.Arrays;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ForkJoinPool;
 
 import static com.transfers.api.util.Address.*;
+import static com.transfers.api.ledger.TransactionAmounts.accountId;
+import static com.transfers.api.ledger.TransactionAmounts.effectiveAmount;
+import static com.transfers.api.ledger.TransactionAmounts.relatedAccountIds;
 import static com.transfers.api.util.Consts.*;
 
 public class RepositoryVerticle extends AbstractVerticle {
@@ -23,110 +47,548 @@ public class RepositoryVerticle extends AbstractVerticle {
     private static final String ACCOUNTS_COUNTER = "account";
     private static final String TRANSACTIONS_COUNTER = "transaction";
 
+    private static final String ARCHIVE_LANE = "archive";
+    private static final String VERIFY_LANE = "verify";
+    private static final String REPLICATION_LANE = "replication";
+
+    private OrderedBlockingExecutor blockingExecutor;
+    private Balances balances = new Balances();
+    private PeriodAggregates aggregates = new PeriodAggregates();
+    private LedgerRows ledgerRows = new LedgerRows();
+    private VelocityLimits velocityLimits;
+    private TransactionArchive archive;
+    private boolean archiving;
+
+    // trace of the message being handled, repository consumers run one at a time on this event loop
+    private Trace currentTrace;
+    private boolean tracing;
+    private SubscriberCount subscriberCount;
+
+    private boolean shipping;
+    // a follower applies the leader's log only, until it is promoted
+    private boolean following;
+    // replication work waiting for a snapshot restore to finish, run in arrival order
+    private final Queue<Runnable> pendingReplication = new ArrayDeque<>();
+    private boolean restoring;
+    private long appliedSequence;
+    private long lastAccountId;
+    private long lastTransactionId;
 
     @Override
     public void start() {
-        vertx.eventBus().consumer(NEW_ACCOUNT_ADDR, message -> {
+        if (config().getBoolean("archive.enabled", false) && config().containsKey("replication.role")) {
+            // archived segments are not shipped, a follower would miss them
+            throw new IllegalStateException("archive.enabled cannot be combined with replication.role");
+        }
+        blockingExecutor = new OrderedBlockingExecutor(context, config());
+        tracing = config().containsKey("tracing.sample.rate");
+        subscriberCount = SubscriberCount.get(vertx);
+        velocityLimits = new VelocityLimits(config().getJsonArray("velocity.rules", new JsonArray()));
+        if (config().getBoolean("archive.enabled", false)) {
+            startArchiver();
+        }
+        shipping = ReplicationState.LEADER.equals(config().getString("replication.role"));
+        if (ReplicationState.FOLLOWER.equals(config().getString("replication.role"))) {
+            following = true;
+            startFollowing();
+        }
+
+        vertx.eventBus().consumer(NEW_ACCOUNT_ADDR, traced(NEW_ACCOUNT_ADDR, message -> {
+            if (following) {
+                readOnly(message);
+                return;
+            }
             vertx.sharedData().getCounter(ACCOUNTS_COUNTER, counter -> counter.result().incrementAndGet(count -> {
                 Long accountId = count.result();
                 JsonObject account = ((JsonObject) message.body())
                         .put(ID, accountId)
                         .put(BALANCE, 0);
                 saveAccount(accountId, account);
+                balances.set(accountId, 0);
+                lastAccountId = accountId;
+                applied(ReplicationFrames.ACCOUNT, account);
                 message.reply(accountId);
             }));
-        });
+        }));
 
-        vertx.eventBus().consumer(ACCOUNT_ADDR, message -> {
+        vertx.eventBus().consumer(ACCOUNT_ADDR, traced(ACCOUNT_ADDR, message -> {
             Long accountId = (Long) message.body();
             if (accountNotExists(accountId)) {
                 accountNotFound(message);
             } else {
-                message.reply(getAccount(accountId));
+                message.reply(getAccount(accountId).put(BALANCE, balances.get(accountId)));
             }
-        });
+        }));
 
-        vertx.eventBus().consumer(BALANCE_OPERATION_ADDR, message -> {
+        vertx.eventBus().consumer(BALANCE_OPERATION_ADDR, traced(BALANCE_OPERATION_ADDR, message -> {
             JsonObject balanceOperationJsonObj = (JsonObject) message.body();
-            Long accountId = balanceOperationJsonObj.getLong(ACCOUNT_ID);
-            if (accountNotExists(accountId)) {
+            long accountId = accountId(balanceOperationJsonObj, ACCOUNT_ID);
+            long effectiveAmount = effectiveAmount(balanceOperationJsonObj, accountId);
+            if (following) {
+                readOnly(message);
+            } else if (accountNotExists(accountId)) {
                 accountNotFound(message);
-            } else if (notEnoughFunds(accountId, balanceOperationJsonObj)) {
+            } else if (notEnoughFunds(accountId, effectiveAmount)) {
                 notEnoughFunds(message);
+            } else if (!balances.canAdd(accountId, effectiveAmount)) {
+                balanceOverflow(message);
+            } else if (velocityLimitExceeded(accountId, effectiveAmount)) {
+                velocityLimitExceeded(message);
             } else {
-                saveTransaction(message, balanceOperationJsonObj, accountId);
+                balances.reserve(accountId, effectiveAmount);
+                saveTransaction(message, balanceOperationJsonObj);
             }
-        });
+        }));
 
-        vertx.eventBus().consumer(BALANCE_ADDR, message -> {
+        vertx.eventBus().consumer(BALANCE_ADDR, traced(BALANCE_ADDR, message -> {
             Long accountId = (Long) message.body();
             if (accountNotExists(accountId)) {
                 accountNotFound(message);
             } else {
-                JsonObject account = (JsonObject) accounts().get(accountId);
-                message.reply(account.getLong(BALANCE));
+                message.reply(balances.get(accountId));
             }
-        });
+        }));
+
+        vertx.eventBus().consumer(BALANCES_ADDR, traced(BALANCES_ADDR, message -> {
+            JsonArray accountIds = (JsonArray) message.body();
+            JsonObject found = new JsonObject();
+            JsonArray notFound = new JsonArray();
+            for (int i = 0; i < accountIds.size(); i++) {
+                Long accountId = accountIds.getLong(i);
+                if (accountNotExists(accountId)) {
+                    notFound.add(accountId);
+                } else {
+                    found.put(String.valueOf(accountId), balances.get(accountId));
+                }
+            }
+            message.reply(new JsonObject()
+                    .put(BALANCES, found)
+                    .put(NOT_FOUND, notFound));
+        }));
 
-        vertx.eventBus().consumer(NEW_TRANSFER_ADDR, message -> {
+        vertx.eventBus().consumer(NEW_TRANSFER_ADDR, traced(NEW_TRANSFER_ADDR, message -> {
             JsonObject transferRequest = (JsonObject) message.body();
-            Long senderAccountId = transferRequest.getLong(SENDER_ACCOUNT_ID);
-            Long receiverAccountId = transferRequest.getLong(RECEIVER_ACCOUNT_ID);
-            if (accountNotExists(senderAccountId) || accountNotExists(receiverAccountId)) {
+            long senderAccountId = accountId(transferRequest, SENDER_ACCOUNT_ID);
+            long receiverAccountId = accountId(transferRequest, RECEIVER_ACCOUNT_ID);
+            long amount = effectiveAmount(transferRequest, receiverAccountId);
+            if (following) {
+                readOnly(message);
+            } else if (accountNotExists(senderAccountId) || accountNotExists(receiverAccountId)) {
                 accountNotFound(message);
-            } else if (notEnoughFunds(senderAccountId, transferRequest)) {
+            } else if (notEnoughFunds(senderAccountId, -amount)) {
                 notEnoughFunds(message);
+            } else if (!balances.canAdd(receiverAccountId, amount)) {
+                balanceOverflow(message);
+            } else if (velocityLimitExceeded(senderAccountId, -amount)) {
+                velocityLimitExceeded(message);
             } else {
-                saveTransaction(message, transferRequest, senderAccountId, receiverAccountId);
+                balances.reserve(senderAccountId, -amount);
+                balances.reserve(receiverAccountId, amount);
+                saveTransaction(message, transferRequest);
             }
-        });
+        }));
 
-        vertx.eventBus().consumer(TRANSACTIONS_ADDR, message -> {
+        vertx.eventBus().consumer(TRANSACTIONS_ADDR, traced(TRANSACTIONS_ADDR, message -> {
             Long accountId = (Long) message.body();
             if (accountNotExists(accountId)) {
                 accountNotFound(message);
             } else {
-                vertx.sharedData().getCounter(TRANSACTIONS_COUNTER, counter -> counter.result().get(count -> {
-                    LocalMap<Object, Object> transactionsMap = transactions();
-                    Long lastId = count.result();
-                    Flowable.rangeLong(1, lastId)
-                            .map(i -> lastId - i + 1)
-                            .map(transactionsMap::get)
-                            .cast(JsonObject.class)
-                            .filter(transaction -> this.belongsToAccount(transaction, accountId))
-                            .map(transaction -> toHistoryRow(transaction, accountId))
-                            .reduce(new JsonArray(), JsonArray::add)
-                            .subscribe((Consumer<JsonArray>) message::reply);
-                }));
+                readHistory(message, accountId);
+            }
+        }));
+
+        vertx.eventBus().consumer(REPLICATION_SNAPSHOT_ADDR, this::buildSnapshot);
+
+        vertx.eventBus().consumer(SUMMARY_ADDR, traced(SUMMARY_ADDR, message -> {
+            JsonObject summaryRequest = (JsonObject) message.body();
+            Long accountId = summaryRequest.getLong(ACCOUNT_ID);
+            if (accountNotExists(accountId)) {
+                accountNotFound(message);
+            } else {
+                message.reply(aggregates.summary(accountId,
+                        LocalDate.parse(summaryRequest.getString(FROM)),
+                        LocalDate.parse(summaryRequest.getString(TO)),
+                        PeriodAggregates.Granularity.valueOf(summaryRequest.getString(GRANULARITY, PeriodAggregates.Granularity.day.name()))));
+            }
+        }));
+
+        vertx.eventBus().consumer(VERIFY_LEDGER_ADDR, traced(VERIFY_LEDGER_ADDR, this::verifyLedger));
+    }
+
+    @Override
+    public void stop() {
+        blockingExecutor.close();
+    }
+
+    private void startFollowing() {
+        vertx.eventBus().<JsonObject>localConsumer(REPLICATION_APPLY_ADDR, message -> afterRestore(() -> {
+            applyEntry(message.body());
+            message.reply(appliedSequence);
+        }));
+
+        vertx.eventBus().<Buffer>localConsumer(REPLICATION_RESTORE_ADDR, message -> afterRestore(() -> restoreSnapshot(message)));
+
+        vertx.eventBus().consumer(REPOSITORY_PROMOTE_ADDR, message -> afterRestore(() -> {
+            shipping = config().containsKey("replication.port");
+            advanceCounter(ACCOUNTS_COUNTER, lastAccountId)
+                    .compose(accounts -> advanceCounter(TRANSACTIONS_COUNTER, lastTransactionId))
+                    .setHandler(advanced -> {
+                        // writes are accepted only once new ids cannot collide with the leader's
+                        following = false;
+                        message.reply(appliedSequence);
+                    });
+        }));
+    }
+
+    private void applyEntry(JsonObject entry) {
+        String type = entry.getString(TYPE);
+        if (ReplicationFrames.ACCOUNT.equals(type)) {
+            JsonObject account = entry.getJsonObject(ReplicationFrames.ACCOUNT);
+            saveAccount(account.getLong(ID), account);
+            balances.set(account.getLong(ID), account.getLong(BALANCE));
+            lastAccountId = account.getLong(ID);
+        } else if (ReplicationFrames.TRANSACTION.equals(type)) {
+            applyTransaction(entry.getJsonObject(ReplicationFrames.TRANSACTION), false);
+        }
+        appliedSequence = entry.getLong(SEQUENCE);
+    }
+
+    /**
+     * Runs replication work now, or once the snapshot being restored has been swapped in.
+     */
+    private void afterRestore(Runnable work) {
+        pendingReplication.add(work);
+        runPendingReplication();
+    }
+
+    private void runPendingReplication() {
+        while (!restoring && !pendingReplication.isEmpty()) {
+            pendingReplication.poll().run();
+        }
+    }
+
+    /**
+     * Encodes the accounts and transactions applied so far as a snapshot frame on the blocking executor, and
+     * replies with the frame and its sequence in a header. Ids come from counters and are applied in order on
+     * this event loop, so the last applied ids are a watermark: rows up to them belong to the snapshot, later
+     * rows are shipped from the log. Archiving, which would remove rows during the scan, is not allowed with
+     * replication.
+     */
+    private void buildSnapshot(Message<Object> message) {
+        long sequence = appliedSequence;
+        long lastAccount = lastAccountId;
+        long lastTransaction = lastTransactionId;
+        long[] balancesSnapshot = balances.copy(lastAccount);
+        LocalMap<Object, Object> accountsMap = accounts();
+        LocalMap<Object, Object> transactionsMap = transactions();
+        blockingExecutor.executeDedicated(REPLICATION_LANE, () -> {
+            JsonArray accountsArr = new JsonArray();
+            for (long id = 1; id <= lastAccount; id++) {
+                JsonObject account = (JsonObject) accountsMap.get(id);
+                if (account != null) {
+                    accountsArr.add(account.put(BALANCE, balancesSnapshot[(int) id]));
+                }
+            }
+            JsonArray transactionsArr = new JsonArray();
+            for (long id = 1; id <= lastTransaction; id++) {
+                Object transaction = transactionsMap.get(id);
+                if (transaction != null) {
+                    transactionsArr.add(transaction);
+                }
+            }
+            return ReplicationFrames.encode(new JsonObject()
+                    .put(TYPE, ReplicationFrames.SNAPSHOT)
+                    .put(SEQUENCE, sequence)
+                    .put(LAST_ACCOUNT_ID, lastAccount)
+                    .put(LAST_TRANSACTION_ID, lastTransaction)
+                    .put(ACCOUNTS, accountsArr)
+                    .put(TRANSACTIONS, transactionsArr));
+        }, frame -> {
+            if (frame.failed()) {
+                message.fail(500, "Failed to build the snapshot");
+            } else {
+                message.reply(frame.result(), new DeliveryOptions().addHeader(SEQUENCE, String.valueOf(sequence)));
+            }
+        });
+    }
+
+    /**
+     * Decodes a snapshot frame and loads it into the shared maps and into new balances and aggregates on the
+     * blocking executor, then swaps them in and replies with the snapshot's sequence. Log entries that arrive
+     * meanwhile wait in {@link #pendingReplication}. Rows past the snapshot, left by a previous leader, are removed.
+     */
+    private void restoreSnapshot(Message<Buffer> message) {
+        restoring = true;
+        Buffer frame = message.body();
+        Balances restoredBalances = new Balances();
+        PeriodAggregates restoredAggregates = new PeriodAggregates();
+        LedgerRows restoredRows = new LedgerRows();
+        LocalMap<Object, Object> accountsMap = accounts();
+        LocalMap<Object, Object> transactionsMap = transactions();
+        blockingExecutor.executeDedicated(REPLICATION_LANE, () -> {
+            JsonObject snapshot = frame.toJsonObject();
+            long lastAccount = snapshot.getLong(LAST_ACCOUNT_ID);
+            long lastTransaction = snapshot.getLong(LAST_TRANSACTION_ID);
+            snapshot.getJsonArray(ACCOUNTS).forEach(entry -> {
+                JsonObject account = (JsonObject) entry;
+                accountsMap.put(account.getLong(ID), account);
+                restoredBalances.set(account.getLong(ID), account.getLong(BALANCE));
+            });
+            snapshot.getJsonArray(TRANSACTIONS).forEach(entry -> {
+                JsonObject transaction = (JsonObject) entry;
+                transactionsMap.put(transaction.getLong(ID), transaction);
+                restoredRows.record(transaction);
+                relatedAccountIds(transaction).forEach(accountId ->
+                        restoredAggregates.record(accountId, transaction.getLong(TIMESTAMP), effectiveAmount(transaction, accountId)));
+            });
+            accountsMap.keySet().stream().filter(id -> (Long) id > lastAccount).forEach(accountsMap::remove);
+            transactionsMap.keySet().stream().filter(id -> (Long) id > lastTransaction).forEach(transactionsMap::remove);
+            return snapshot;
+        }, restored -> {
+            if (restored.succeeded()) {
+                JsonObject snapshot = restored.result();
+                balances = restoredBalances;
+                aggregates = restoredAggregates;
+                ledgerRows = restoredRows;
+                lastAccountId = snapshot.getLong(LAST_ACCOUNT_ID);
+                lastTransactionId = snapshot.getLong(LAST_TRANSACTION_ID);
+                appliedSequence = snapshot.getLong(SEQUENCE);
+                message.reply(appliedSequence);
+            } else {
+                message.fail(500, "Failed to restore the snapshot");
+            }
+            restoring = false;
+            runPendingReplication();
+        });
+    }
+
+    /**
+     * Moves a shared counter forward to at least the given value, so a promoted follower continues the leader's ids.
+     */
+    private Future<Void> advanceCounter(String name, long value) {
+        Promise<Void> advanced = Promise.promise();
+        vertx.sharedData().getCounter(name, counter -> counter.result().get(current ->
+                counter.result().addAndGet(Math.max(0, value - current.result()), added -> advanced.complete())));
+        return advanced.future();
+    }
+
+    /**
+     * Counts an applied operation and, on a leader, publishes it to the replication log.
+     */
+    private void applied(String type, JsonObject entity) {
+        appliedSequence++;
+        if (shipping) {
+            vertx.eventBus().publish(REPLICATION_LOG_ADDR, new JsonObject()
+                    .put(SEQUENCE, appliedSequence)
+                    .put(TYPE, type)
+                    .put(type, entity));
+        }
+    }
+
+    /**
+     * Scans the in-memory ledger, and the archive segments that mention the account, on the blocking executor.
+     * The scan runs from the last applied id rather than the counter, which a follower does not advance.
+     */
+    private void readHistory(Message<Object> message, Long accountId) {
+        LocalMap<Object, Object> transactionsMap = transactions();
+        long lastId = lastTransactionId;
+        long archivedUpTo = archive == null ? 0 : archive.archivedUpTo();
+        List<Segment> archivedSegments = archive == null ? Collections.emptyList() : archive.segments(accountId);
+        blockingExecutor.execute(accountId, () -> {
+            JsonArray history = Flowable.rangeLong(archivedUpTo + 1, lastId - archivedUpTo)
+                    .map(i -> lastId - i + archivedUpTo + 1)
+                    .filter(transactionsMap::containsKey)
+                    .map(transactionsMap::get)
+                    .cast(JsonObject.class)
+                    .filter(transaction -> this.belongsToAccount(transaction, accountId))
+                    .map(transaction -> toHistoryRow(transaction, accountId))
+                    .reduce(new JsonArray(), JsonArray::add)
+                    .blockingGet();
+            List<JsonObject> archived = TransactionArchive.read(archivedSegments);
+            for (int i = archived.size() - 1; i >= 0; i--) {
+                JsonObject transaction = archived.get(i);
+                if (belongsToAccount(transaction, accountId)) {
+                    history.add(toHistoryRow(transaction, accountId));
+                }
+            }
+            return history;
+        }, history -> {
+            if (history.failed()) {
+                message.fail(500, "Failed to read transactions");
+            } else if (archive != null && archive.archivedUpTo() != archivedUpTo) {
+                // rows moved to a new segment while the scan was running, read again
+                readHistory(message, accountId);
+            } else {
+                message.reply(history.result());
+            }
+        });
+    }
+
+    /**
+     * Snapshots the balances and the ledger rows with the last applied id, then recomputes every balance from the
+     * ledger on the blocking executor. Verifications share a dedicated lane, so they run one at a time without
+     * holding up account work.
+     */
+    private void verifyLedger(Message<Object> message) {
+        long[] balancesSnapshot = balances.copy(lastAccountId);
+        long lastId = lastTransactionId;
+        long archivedUpTo = archive == null ? 0 : archive.archivedUpTo();
+        List<Segment> archivedSegments = archive == null ? Collections.emptyList() : archive.segments();
+        LedgerRows.View rows = ledgerRows.view();
+        blockingExecutor.executeDedicated(VERIFY_LANE, () -> new LedgerVerifier(balancesSnapshot, rows)
+                .verify(archivedUpTo, lastId, archivedSegments, ForkJoinPool.commonPool()), report -> {
+            if (report.failed()) {
+                message.fail(500, "Failed to verify the ledger");
+            } else if (archive != null && archive.archivedUpTo() != archivedUpTo) {
+                // rows moved to a new segment while the scan was running, verify again
+                verifyLedger(message);
+            } else {
+                message.reply(report.result());
+            }
+        });
+    }
+
+    private void startArchiver() {
+        archive = new TransactionArchive(config().getString("archive.dir", "archive"));
+        long ageSeconds = config().getLong("archive.age.seconds", 30L * 24 * 60 * 60);
+        int batchSize = config().getInteger("archive.batch.size", 10000);
+        blockingExecutor.executeDedicated(ARCHIVE_LANE, () -> {
+            archive.reset();
+            return null;
+        }, reset -> {
+            if (reset.succeeded()) {
+                vertx.setPeriodic(config().getLong("archive.interval.ms", 60000L),
+                        timerId -> archiveOldTransactions(ageSeconds, batchSize));
+            }
+        });
+    }
+
+    /**
+     * Moves up to batchSize of the oldest in-memory transactions to a new archive segment. Rows are collected and
+     * written on the blocking executor; they leave the in-memory ledger only once the segment is readable.
+     */
+    private void archiveOldTransactions(long ageSeconds, int batchSize) {
+        if (archiving) {
+            return;
+        }
+        archiving = true;
+        long cutoff = Instant.now().getEpochSecond() - ageSeconds;
+        long archivedUpTo = archive.archivedUpTo();
+        LocalMap<Object, Object> transactionsMap = transactions();
+        blockingExecutor.executeDedicated(ARCHIVE_LANE, () -> {
+            List<JsonObject> batch = new ArrayList<>();
+            for (long id = archivedUpTo + 1; batch.size() < batchSize; id++) {
+                JsonObject transaction = (JsonObject) transactionsMap.get(id);
+                if (transaction == null || transaction.getLong(TIMESTAMP) > cutoff) {
+                    break;
+                }
+                batch.add(transaction);
+            }
+            return batch.isEmpty() ? null : archive.write(batch);
+        }, written -> {
+            archiving = false;
+            if (written.succeeded() && written.result() != null) {
+                Segment segment = written.result();
+                archive.register(segment);
+                for (long id = segment.firstId(); id <= segment.lastId(); id++) {
+                    transactionsMap.remove(id);
+                }
+                ledgerRows.release(segment.lastId());
             }
         });
     }
 
-    private boolean notEnoughFunds(Long accountId, JsonObject balanceOperationJsonObj) {
-        JsonObject account = getAccount(accountId);
-        Integer effectiveAmmount = effectiveAmount(balanceOperationJsonObj, accountId);
-        return (effectiveAmmount < 0 && account.getLong(BALANCE) < Math.abs(effectiveAmmount));
+    private boolean notEnoughFunds(long accountId, long effectiveAmount) {
+        return effectiveAmount < 0 && balances.available(accountId) < -effectiveAmount;
+    }
+
+    /**
+     * Counts a debit against the velocity rules when it is allowed, so this must be the last check before saving.
+     */
+    private boolean velocityLimitExceeded(long accountId, long effectiveAmount) {
+        return effectiveAmount < 0 && !velocityLimits.isEmpty()
+                && !velocityLimits.tryRecord(accountId, -effectiveAmount, System.currentTimeMillis());
+    }
+
+    /**
+     * Records the time a sampled request spends in the handler; the reply may be sent later, e.g. after the counter.
+     */
+    private Handler<Message<Object>> traced(String address, Handler<Message<Object>> handler) {
+        if (!tracing) {
+            return handler;
+        }
+        return message -> {
+            Trace trace = Trace.received(vertx, message, address);
+            if (trace == null) {
+                handler.handle(message);
+                return;
+            }
+            currentTrace = trace;
+            try {
+                handler.handle(message);
+            } finally {
+                currentTrace = null;
+            }
+            trace.finish("repository " + address, System.nanoTime(), null);
+        };
     }
 
-    private void saveTransaction(Message<Object> message, JsonObject transactionJsonObj, Long... relatedAccountIds) {
+    /**
+     * Takes an id for a transaction whose balance deltas are already reserved, then commits them. Counter callbacks
+     * run in request order on this event loop, so reservations are committed in the order they were made.
+     */
+    private void saveTransaction(Message<Object> message, JsonObject transactionJsonObj) {
+        Trace trace = currentTrace;
+        long requestedAt = trace == null ? 0 : System.nanoTime();
         vertx.sharedData().getCounter(TRANSACTIONS_COUNTER, counter -> counter.result().incrementAndGet(count -> {
+            if (trace != null) {
+                trace.record("transaction counter", requestedAt, System.nanoTime());
+            }
             Long transactionId = count.result();
             transactionJsonObj.put(ID, transactionId);
             transactionJsonObj.put(TIMESTAMP, Instant.now().getEpochSecond());
-            transactions().put(transactionId, transactionJsonObj);
-            updateBalance(transactionJsonObj, relatedAccountIds);
+            applyTransaction(transactionJsonObj, true);
+            applied(ReplicationFrames.TRANSACTION, transactionJsonObj);
             message.reply(transactionId);
         }));
     }
 
-    private void updateBalance(JsonObject transactionJsonObj, Long... relatedAccountIds) {
-        Arrays.stream(relatedAccountIds)
-                .forEach(accountId -> {
-                    Integer effectiveAmount = effectiveAmount(transactionJsonObj, accountId);
-                    JsonObject account = getAccount(accountId);
-                    account.put(BALANCE, account.getLong(BALANCE) + effectiveAmount);
-                    saveAccount(accountId, account);
-                });
+    /**
+     * @param reserved whether the balance deltas were reserved by the checks, which is the case on the leader only
+     */
+    private void applyTransaction(JsonObject transactionJsonObj, boolean reserved) {
+        Long transactionId = transactionJsonObj.getLong(ID);
+        transactions().put(transactionId, transactionJsonObj);
+        ledgerRows.record(transactionJsonObj);
+        lastTransactionId = Math.max(lastTransactionId, transactionId);
+        long accountId = accountId(transactionJsonObj, ACCOUNT_ID);
+        if (accountId != 0) {
+            updateBalance(transactionJsonObj, accountId, reserved);
+        } else {
+            updateBalance(transactionJsonObj, accountId(transactionJsonObj, SENDER_ACCOUNT_ID), reserved);
+            updateBalance(transactionJsonObj, accountId(transactionJsonObj, RECEIVER_ACCOUNT_ID), reserved);
+        }
+    }
+
+    private void updateBalance(JsonObject transactionJsonObj, long accountId, boolean reserved) {
+        long effectiveAmount = effectiveAmount(transactionJsonObj, accountId);
+        long balance = reserved ? balances.commit(accountId, effectiveAmount) : balances.add(accountId, effectiveAmount);
+        long timestamp = ((Number) transactionJsonObj.getValue(TIMESTAMP)).longValue();
+        aggregates.record(accountId, timestamp, effectiveAmount);
+        if (subscriberCount.any()) {
+            publishBalanceUpdate(transactionJsonObj, accountId, balance, effectiveAmount);
+        }
+    }
+
+    private void publishBalanceUpdate(JsonObject transactionJsonObj, long accountId, long balance, long effectiveAmount) {
+        JsonObject update = new JsonObject()
+                .put(ACCOUNT_ID, accountId)
+                .put(BALANCE, balance)
+                .put(TRANSACTION_ID, transactionJsonObj.getLong(ID))
+                .put(OPERATION, transactionJsonObj.getString(OPERATION))
+                .put(AMOUNT, effectiveAmount)
+                .put(TIMESTAMP, transactionJsonObj.getLong(TIMESTAMP));
+        vertx.eventBus().publish(BALANCE_UPDATES_ADDR, update);
     }
 
     private boolean belongsToAccount(JsonObject transaction, Long accountId) {
@@ -143,8 +605,11 @@ public class RepositoryVerticle extends AbstractVerticle {
         return vertx.sharedData().getLocalMap(ACCOUNTS_MAP);
     }
 
-    private boolean accountNotExists(Long accountId) {
-        return !accounts().containsKey(accountId);
+    /**
+     * Account ids come from a counter and are applied in order, so every id up to the last applied one exists.
+     */
+    private boolean accountNotExists(long accountId) {
+        return accountId < 1 || accountId > lastAccountId;
     }
 
     private JsonObject getAccount(Long accountId) {
@@ -155,6 +620,10 @@ public class RepositoryVerticle extends AbstractVerticle {
         accounts().put(accountId, account);
     }
 
+    private void readOnly(Message message) {
+        message.fail(503, "Read-only replica");
+    }
+
     private void accountNotFound(Message message) {
         message.fail(404, "Account not found");
     }
@@ -163,14 +632,12 @@ public class RepositoryVerticle extends AbstractVerticle {
         message.fail(422, "Not enough funds");
     }
 
-    private Integer effectiveAmount(JsonObject transactionJsonObj, Long accountId) {
-        Integer amount = transactionJsonObj.getInteger(AMOUNT);
-        String operation = transactionJsonObj.getString(OPERATION);
-        Long senderAccountId = transactionJsonObj.getLong(SENDER_ACCOUNT_ID);
-        if (Operation.withdraw.name().equals(operation) || accountId.equals(senderAccountId)) {
-            amount = -amount;
-        }
-        return amount;
+    private void balanceOverflow(Message message) {
+        message.fail(422, "Balance overflow");
+    }
+
+    private void velocityLimitExceeded(Message message) {
+        message.fail(403, "Velocity limit exceeded");
     }
 
     private JsonObject toHistoryRow(JsonObject transaction, Long accountId) {
@@ -0,0 +1,159 @@
+package com.transfers.api.binary;
+
+import com.transfers.api.util.Operation;
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.eventbus.ReplyFailure;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.NetSocket;
+import io.vertx.core.parsetools.RecordParser;
+
+import java.nio.charset.StandardCharsets;
+
+import static com.transfers.api.util.Address.*;
+import static com.transfers.api.util.Consts.*;
+
+/**
+ * Length-prefixed binary TCP transport for internal high-frequency clients, dispatching into the same
+ * repository addresses as the REST API. All numbers are big-endian.
+ * <pre>
+ * request:  int length | byte command | long correlationId | command fields
+ *           TRANSFER  long senderAccountId | long receiverAccountId | long amount
+ *           DEPOSIT   long accountId | long amount
+ *           WITHDRAW  long accountId | long amount
+ *           BALANCE   long accountId
+ * response: int length | long correlationId | short status | long value | utf-8 error message
+ * </pre>
+ * {@code length} counts the bytes after itself. {@code status} uses the REST status codes, {@code value}
+ * is the transaction id or the balance. Requests may be pipelined, responses are written as soon as each
+ * command completes and are matched to requests by correlation id.
+ */
+public class BinaryProtocolVerticle extends AbstractVerticle {
+
+    public static final byte TRANSFER = 1;
+    public static final byte DEPOSIT = 2;
+    public static final byte WITHDRAW = 3;
+    public static final byte BALANCE_QUERY = 4;
+
+    private static final int MAX_FRAME_LENGTH = 64;
+
+    @Override
+    public void start(Promise<Void> startPromise) {
+        vertx.createNetServer()
+                .connectHandler(this::handleConnection)
+                .listen(config().getInteger("binary.port"), server -> {
+                    if (server.succeeded()) {
+                        startPromise.complete();
+                    } else {
+                        startPromise.fail(server.cause());
+                    }
+                });
+    }
+
+    private void handleConnection(NetSocket socket) {
+        RecordParser parser = RecordParser.newFixed(4);
+        parser.handler(new Handler<Buffer>() {
+            private boolean expectingLength = true;
+
+            @Override
+            public void handle(Buffer record) {
+                if (expectingLength) {
+                    int length = record.getInt(0);
+                    if (length < 9 || length > MAX_FRAME_LENGTH) {
+                        socket.close();
+                        return;
+                    }
+                    parser.fixedSizeMode(length);
+                } else {
+                    handleFrame(socket, record);
+                    parser.fixedSizeMode(4);
+                }
+                expectingLength = !expectingLength;
+            }
+        });
+        socket.handler(parser);
+        socket.drainHandler(v -> socket.resume());
+    }
+
+    /**
+     * Stops reading requests while the client is not reading responses, so pipelined commands cannot pile up
+     * replies in the write queue.
+     */
+    private static void write(NetSocket socket, Buffer response) {
+        socket.write(response);
+        if (socket.writeQueueFull()) {
+            socket.pause();
+        }
+    }
+
+    private void handleFrame(NetSocket socket, Buffer frame) {
+        byte command = frame.getByte(0);
+        long correlationId = frame.getLong(1);
+        Handler<AsyncResult<Message<Long>>> replyHandler = reply -> {
+            if (reply.succeeded()) {
+                write(socket, response(correlationId, 200, reply.result().body(), null));
+            } else {
+                ReplyException cause = (ReplyException) reply.cause();
+                write(socket, response(correlationId, status(cause), 0, cause.getMessage()));
+            }
+        };
+        if (command == TRANSFER && frame.length() == 33) {
+            long senderAccountId = frame.getLong(9);
+            long receiverAccountId = frame.getLong(17);
+            long amount = frame.getLong(25);
+            if (senderAccountId < 1 || receiverAccountId < 1 || amount < 1) {
+                write(socket, response(correlationId, 400, 0, "Account ids and amount must be positive"));
+            } else if (senderAccountId == receiverAccountId) {
+                write(socket, response(correlationId, 400, 0, "Sender and receiver accounts must be different"));
+            } else {
+                JsonObject transfer = new JsonObject()
+                        .put(SENDER_ACCOUNT_ID, senderAccountId)
+                        .put(RECEIVER_ACCOUNT_ID, receiverAccountId)
+                        .put(AMOUNT, amount)
+                        .put(OPERATION, Operation.transfer.name());
+                vertx.eventBus().request(NEW_TRANSFER_ADDR, transfer, replyHandler);
+            }
+        } else if ((command == DEPOSIT || command == WITHDRAW) && frame.length() == 25) {
+            long accountId = frame.getLong(9);
+            long amount = frame.getLong(17);
+            if (accountId < 1 || amount < 1) {
+                write(socket, response(correlationId, 400, 0, "Account id and amount must be positive"));
+            } else {
+                JsonObject balanceOperation = new JsonObject()
+                        .put(ACCOUNT_ID, accountId)
+                        .put(AMOUNT, amount)
+                        .put(OPERATION, command == DEPOSIT ? Operation.deposit.name() : Operation.withdraw.name());
+                vertx.eventBus().request(BALANCE_OPERATION_ADDR, balanceOperation, replyHandler);
+            }
+        } else if (command == BALANCE_QUERY && frame.length() == 17) {
+            vertx.eventBus().request(BALANCE_ADDR, frame.getLong(9), replyHandler);
+        } else {
+            write(socket, response(correlationId, 400, 0, "Unknown command or malformed frame"));
+        }
+    }
+
+    /**
+     * Repository failures carry a REST status; timeouts and missing consumers have none.
+     */
+    private static int status(ReplyException cause) {
+        if (cause.failureType() == ReplyFailure.RECIPIENT_FAILURE && cause.failureCode() >= 400 && cause.failureCode() < 600) {
+            return cause.failureCode();
+        }
+        return cause.failureType() == ReplyFailure.RECIPIENT_FAILURE ? 500 : 503;
+    }
+
+    private static Buffer response(long correlationId, int status, long value, String error) {
+        byte[] message = error == null ? new byte[0] : error.getBytes(StandardCharsets.UTF_8);
+        return Buffer.buffer(4 + 18 + message.length)
+                .appendInt(18 + message.length)
+                .appendLong(correlationId)
+                .appendShort((short) status)
+                .appendLong(value)
+                .appendBytes(message);
+    }
+}
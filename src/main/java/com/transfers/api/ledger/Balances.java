@@ -0,0 +1,88 @@
+package com.transfers.api.ledger;
+
+import java.util.Arrays;
+
+/**
+ * Account balances in minor units, stored as primitive longs indexed by account id.
+ * <p>
+ * Account ids come from a counter and are dense, so a growable array gives allocation-free reads and
+ * updates on the balance check-and-update path, unlike the account documents in the shared map which
+ * are copied on every access. Only the repository event loop touches it, except that a follower fills a new
+ * instance on the blocking executor while restoring a snapshot.
+ */
+public class Balances {
+
+    private long[] balances = new long[1024];
+    // sums of the deltas of accepted transactions still waiting for their id
+    private long[] reserved = new long[1024];
+
+    public long get(long accountId) {
+        return accountId < balances.length ? balances[(int) accountId] : 0;
+    }
+
+    public void set(long accountId, long balance) {
+        ensureCapacity(accountId);
+        balances[(int) accountId] = balance;
+    }
+
+    /**
+     * The balance once every reserved delta is committed. Checks run against it, so two transactions accepted
+     * before either gets its id cannot together overdraw or overflow the account.
+     */
+    public long available(long accountId) {
+        return accountId < reserved.length ? get(accountId) + reserved[(int) accountId] : get(accountId);
+    }
+
+    /**
+     * @return false if adding delta to the available balance would overflow
+     */
+    public boolean canAdd(long accountId, long delta) {
+        long balance = available(accountId);
+        long sum = balance + delta;
+        return ((balance ^ sum) & (delta ^ sum)) >= 0;
+    }
+
+    /**
+     * Holds a checked delta until {@link #commit(long, long)}. Reserved deltas must be committed in the order
+     * they were reserved.
+     */
+    public void reserve(long accountId, long delta) {
+        ensureCapacity(accountId);
+        reserved[(int) accountId] += delta;
+    }
+
+    /**
+     * Applies a reserved delta to the balance.
+     *
+     * @return the new balance
+     */
+    public long commit(long accountId, long delta) {
+        reserved[(int) accountId] -= delta;
+        return balances[(int) accountId] += delta;
+    }
+
+    /**
+     * @throws ArithmeticException if the balance overflows
+     */
+    public long add(long accountId, long delta) {
+        long balance = Math.addExact(get(accountId), delta);
+        set(accountId, balance);
+        return balance;
+    }
+
+    /**
+     * A copy of the balances of accounts up to maxAccountId, indexed by account id.
+     */
+    public long[] copy(long maxAccountId) {
+        long[] copy = new long[(int) maxAccountId + 1];
+        System.arraycopy(balances, 0, copy, 0, (int) Math.min(balances.length, copy.length));
+        return copy;
+    }
+
+    private void ensureCapacity(long accountId) {
+        if (accountId >= balances.length) {
+            balances = Arrays.copyOf(balances, (int) Math.max(accountId + 1, balances.length * 2L));
+            reserved = Arrays.copyOf(reserved, balances.length);
+        }
+    }
+}
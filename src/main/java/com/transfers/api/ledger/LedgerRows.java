@@ -0,0 +1,96 @@
+package com.transfers.api.ledger;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.Arrays;
+
+import static com.transfers.api.ledger.TransactionAmounts.accountId;
+import static com.transfers.api.ledger.TransactionAmounts.effectiveAmount;
+import static com.transfers.api.util.Consts.*;
+
+/**
+ * Compact copy of the in-memory ledger for the verifier: per transaction id, the debited account, the credited
+ * account and the amount, in primitive pages of {@value #PAGE_SIZE} ids. Reading a row neither copies it, as the
+ * shared map does, nor allocates.
+ * <p>
+ * Only the repository event loop writes it, except that a follower fills a new instance on the blocking executor
+ * while restoring a snapshot. Readers on other threads use a {@link #view()} taken on the event loop: pages are
+ * never moved, so rows written before the view was taken stay readable while later rows are added.
+ */
+public class LedgerRows {
+
+    private static final int PAGE_SHIFT = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int COLUMNS = 3;
+
+    private long[][] pages = new long[16][];
+
+    public void record(JsonObject transaction) {
+        long id = ((Number) transaction.getValue(ID)).longValue();
+        long amount = ((Number) transaction.getValue(AMOUNT)).longValue();
+        long accountId = accountId(transaction, ACCOUNT_ID);
+        if (accountId == 0) {
+            set(id, accountId(transaction, SENDER_ACCOUNT_ID), accountId(transaction, RECEIVER_ACCOUNT_ID), amount);
+        } else if (effectiveAmount(transaction, accountId) < 0) {
+            set(id, accountId, 0, amount);
+        } else {
+            set(id, 0, accountId, amount);
+        }
+    }
+
+    /**
+     * Drops the pages whose ids are all up to the given one, once they are archived.
+     */
+    public void release(long upToId) {
+        for (int page = 0; page < pages.length && ((long) page + 1 << PAGE_SHIFT) - 1 <= upToId; page++) {
+            pages[page] = null;
+        }
+    }
+
+    public View view() {
+        return new View(pages);
+    }
+
+    private void set(long id, long debitAccountId, long creditAccountId, long amount) {
+        int page = (int) (id >>> PAGE_SHIFT);
+        if (page >= pages.length) {
+            pages = Arrays.copyOf(pages, Math.max(page + 1, pages.length * 2));
+        }
+        if (pages[page] == null) {
+            pages[page] = new long[PAGE_SIZE * COLUMNS];
+        }
+        int offset = (int) (id & (PAGE_SIZE - 1)) * COLUMNS;
+        pages[page][offset] = debitAccountId;
+        pages[page][offset + 1] = creditAccountId;
+        pages[page][offset + 2] = amount;
+    }
+
+    /**
+     * The rows recorded when the view was taken. Absent or released rows read as 0.
+     */
+    public static class View {
+        private final long[][] pages;
+
+        private View(long[][] pages) {
+            this.pages = pages;
+        }
+
+        public long debitAccountId(long id) {
+            return column(id, 0);
+        }
+
+        public long creditAccountId(long id) {
+            return column(id, 1);
+        }
+
+        public long amount(long id) {
+            return column(id, 2);
+        }
+
+        private long column(long id, int column) {
+            int page = (int) (id >>> PAGE_SHIFT);
+            long[] rows = page < pages.length ? pages[page] : null;
+            return rows == null ? 0 : rows[(int) (id & (PAGE_SIZE - 1)) * COLUMNS + column];
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.transfers.api.ledger;
+
+import com.transfers.api.ledger.TransactionArchive.Segment;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.transfers.api.ledger.TransactionAmounts.accountId;
+import static com.transfers.api.ledger.TransactionAmounts.effectiveAmount;
+import static com.transfers.api.util.Consts.*;
+
+/**
+ * Recomputes every account balance from the ledger in a single parallel pass and compares it with a snapshot
+ * of the stored balances.
+ * <p>
+ * The in-memory id range is split into fork-join tasks and each archive segment is read by its own task, all
+ * summing into one array of per-account totals. The pass is O(transactions), unlike reading the history of
+ * every account. In-memory rows are read from {@link LedgerRows}, so the pass does not copy or allocate per row.
+ * The snapshot and the rows view must be taken together with the last applied id, on the repository event loop.
+ */
+public class LedgerVerifier {
+
+    private static final int RANGE_SIZE = 4096;
+    private static final int MAX_REPORTED = 1000;
+
+    private final long[] balances;
+    private final LedgerRows.View rows;
+    private final AtomicLongArray totals;
+    private final LongAdder checked = new LongAdder();
+
+    /**
+     * @param balances stored balances indexed by account id, see {@link Balances#copy(long)}
+     */
+    public LedgerVerifier(long[] balances, LedgerRows.View rows) {
+        this.balances = balances;
+        this.rows = rows;
+        this.totals = new AtomicLongArray(balances.length);
+    }
+
+    /**
+     * Blocking: sums the archived segments and the in-memory rows with ids after {@code archivedUpTo} up to
+     * {@code lastId}, then reports the accounts whose balance differs from the sum of their transactions.
+     */
+    public JsonObject verify(long archivedUpTo, long lastId, List<Segment> segments, ForkJoinPool pool) {
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        tasks.add(new RangeTask(archivedUpTo + 1, lastId));
+        for (Segment segment : segments) {
+            tasks.add(ForkJoinTask.adapt(() -> {
+                TransactionArchive.read(Collections.singletonList(segment)).forEach(this::add);
+                return null;
+            }));
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+
+        JsonArray discrepancies = new JsonArray();
+        int discrepancyCount = 0;
+        for (int accountId = 1; accountId < balances.length; accountId++) {
+            long expected = totals.get(accountId);
+            if (balances[accountId] != expected && discrepancyCount++ < MAX_REPORTED) {
+                discrepancies.add(new JsonObject()
+                        .put(ACCOUNT_ID, accountId)
+                        .put(BALANCE, balances[accountId])
+                        .put(EXPECTED, expected));
+            }
+        }
+        return new JsonObject()
+                .put(CONSISTENT, discrepancyCount == 0)
+                .put(ACCOUNTS, balances.length - 1)
+                .put(TRANSACTIONS, checked.sum())
+                .put(LAST_TRANSACTION_ID, lastId)
+                .put(DISCREPANCY_COUNT, discrepancyCount)
+                .put(DISCREPANCIES, discrepancies);
+    }
+
+    private void add(JsonObject transaction) {
+        long accountId = accountId(transaction, ACCOUNT_ID);
+        if (accountId != 0) {
+            add(accountId, effectiveAmount(transaction, accountId));
+        } else {
+            long senderAccountId = accountId(transaction, SENDER_ACCOUNT_ID);
+            long receiverAccountId = accountId(transaction, RECEIVER_ACCOUNT_ID);
+            add(senderAccountId, effectiveAmount(transaction, senderAccountId));
+            add(receiverAccountId, effectiveAmount(transaction, receiverAccountId));
+        }
+        checked.increment();
+    }
+
+    private void add(long accountId, long effectiveAmount) {
+        if (accountId > 0 && accountId < balances.length) {
+            totals.addAndGet((int) accountId, effectiveAmount);
+        }
+    }
+
+    /**
+     * Sums the in-memory rows of an id range, splitting it in halves down to {@link #RANGE_SIZE} ids.
+     */
+    private class RangeTask extends RecursiveAction {
+        private final long fromId;
+        private final long toId;
+
+        private RangeTask(long fromId, long toId) {
+            this.fromId = fromId;
+            this.toId = toId;
+        }
+
+        @Override
+        protected void compute() {
+            if (toId - fromId < RANGE_SIZE) {
+                for (long id = fromId; id <= toId; id++) {
+                    long amount = rows.amount(id);
+                    if (amount != 0) {
+                        add(rows.debitAccountId(id), -amount);
+                        add(rows.creditAccountId(id), amount);
+                        checked.increment();
+                    }
+                }
+            } else {
+                long middle = (fromId + toId) >>> 1;
+                invokeAll(new RangeTask(fromId, middle), new RangeTask(middle + 1, toId));
+            }
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.transfers.api.ledger;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Arrays;
+
+import static com.transfers.api.util.Consts.*;
+
+/**
+ * Per-account credit and debit totals by UTC day and month, maintained incrementally as
+ * transactions are applied. A summary query walks only the buckets inside the requested range.
+ * <p>
+ * Buckets are kept in primitive arrays sorted by epoch day or month, per account indexed by the dense
+ * account id, so recording a transaction in an existing bucket does not allocate.
+ */
+public class PeriodAggregates {
+
+    public enum Granularity {
+        day,
+        month
+    }
+
+    private static final long SECONDS_PER_DAY = 86400;
+
+    private Series[] daily = new Series[1024];
+    private Series[] monthly = new Series[1024];
+
+    public void record(long accountId, long timestamp, long effectiveAmount) {
+        if (accountId >= daily.length) {
+            daily = Arrays.copyOf(daily, (int) Math.max(accountId + 1, daily.length * 2L));
+            monthly = Arrays.copyOf(monthly, daily.length);
+        }
+        int index = (int) accountId;
+        if (daily[index] == null) {
+            daily[index] = new Series();
+            monthly[index] = new Series();
+        }
+        long epochDay = Math.floorDiv(timestamp, SECONDS_PER_DAY);
+        daily[index].add(epochDay, effectiveAmount);
+        monthly[index].add(monthKey(epochDay), effectiveAmount);
+    }
+
+    public JsonObject summary(long accountId, LocalDate from, LocalDate to, Granularity granularity) {
+        Series series;
+        long fromKey;
+        long toKey;
+        if (granularity == Granularity.month) {
+            series = accountId < monthly.length ? monthly[(int) accountId] : null;
+            fromKey = monthKey(from.toEpochDay());
+            toKey = monthKey(to.toEpochDay());
+        } else {
+            series = accountId < daily.length ? daily[(int) accountId] : null;
+            fromKey = from.toEpochDay();
+            toKey = to.toEpochDay();
+        }
+        long credit = 0;
+        long debit = 0;
+        long creditCount = 0;
+        long debitCount = 0;
+        JsonArray periods = new JsonArray();
+        if (series != null) {
+            for (int i = series.ceiling(fromKey); i < series.size && series.keys[i] <= toKey; i++) {
+                credit += series.credit[i];
+                debit += series.debit[i];
+                creditCount += series.creditCount[i];
+                debitCount += series.debitCount[i];
+                periods.add(toJson(series.credit[i], series.debit[i], series.creditCount[i], series.debitCount[i])
+                        .put(PERIOD, periodName(series.keys[i], granularity)));
+            }
+        }
+        return toJson(credit, debit, creditCount, debitCount).put(PERIODS, periods);
+    }
+
+    /**
+     * Months since year 0 of a UTC epoch day, using the days-to-civil algorithm of the proleptic Gregorian calendar.
+     */
+    static long monthKey(long epochDay) {
+        long shifted = epochDay + 719468;
+        long era = Math.floorDiv(shifted, 146097);
+        long dayOfEra = shifted - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shiftedMonth = (5 * dayOfYear + 2) / 153;
+        long month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        return year * 12 + month - 1;
+    }
+
+    private static String periodName(long key, Granularity granularity) {
+        if (granularity == Granularity.month) {
+            return YearMonth.of((int) Math.floorDiv(key, 12), (int) Math.floorMod(key, 12) + 1).toString();
+        }
+        return LocalDate.ofEpochDay(key).toString();
+    }
+
+    private static JsonObject toJson(long credit, long debit, long creditCount, long debitCount) {
+        return new JsonObject()
+                .put(CREDIT, credit)
+                .put(DEBIT, debit)
+                .put(CREDIT_COUNT, creditCount)
+                .put(DEBIT_COUNT, debitCount);
+    }
+
+    /**
+     * Buckets of one account sorted by key. Transactions mostly arrive in time order, so the last bucket is
+     * checked first and new buckets are usually appended.
+     */
+    private static class Series {
+        private long[] keys = new long[8];
+        private long[] credit = new long[8];
+        private long[] debit = new long[8];
+        private long[] creditCount = new long[8];
+        private long[] debitCount = new long[8];
+        private int size;
+
+        private void add(long key, long effectiveAmount) {
+            int index;
+            if (size > 0 && keys[size - 1] == key) {
+                index = size - 1;
+            } else {
+                index = ceiling(key);
+                if (index == size || keys[index] != key) {
+                    insert(index, key);
+                }
+            }
+            if (effectiveAmount < 0) {
+                debit[index] -= effectiveAmount;
+                debitCount[index]++;
+            } else {
+                credit[index] += effectiveAmount;
+                creditCount[index]++;
+            }
+        }
+
+        /**
+         * @return the index of the first bucket with a key not below the given one, size if there is none
+         */
+        private int ceiling(long key) {
+            if (size == 0 || keys[size - 1] < key) {
+                return size;
+            }
+            int index = Arrays.binarySearch(keys, 0, size, key);
+            return index >= 0 ? index : -index - 1;
+        }
+
+        private void insert(int index, long key) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                credit = Arrays.copyOf(credit, size * 2);
+                debit = Arrays.copyOf(debit, size * 2);
+                creditCount = Arrays.copyOf(creditCount, size * 2);
+                debitCount = Arrays.copyOf(debitCount, size * 2);
+            }
+            shift(keys, index);
+            shift(credit, index);
+            shift(debit, index);
+            shift(creditCount, index);
+            shift(debitCount, index);
+            keys[index] = key;
+            size++;
+        }
+
+        private void shift(long[] column, int index) {
+            System.arraycopy(column, index, column, index + 1, size - index);
+            column[index] = 0;
+        }
+    }
+}
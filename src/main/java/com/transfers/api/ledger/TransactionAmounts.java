@@ -0,0 +1,48 @@
+package com.transfers.api.ledger;
+
+import com.transfers.api.util.Operation;
+import io.vertx.core.json.JsonObject;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.transfers.api.util.Consts.*;
+
+/**
+ * How a transaction moves money, shared by the repository and the ledger verifier so both apply the same rules.
+ */
+public class TransactionAmounts {
+
+    private TransactionAmounts() {
+    }
+
+    /**
+     * The signed amount a transaction adds to an account's balance: negative for withdrawals and for the sender of a transfer.
+     */
+    public static long effectiveAmount(JsonObject transactionJsonObj, long accountId) {
+        long amount = ((Number) transactionJsonObj.getValue(AMOUNT)).longValue();
+        String operation = transactionJsonObj.getString(OPERATION);
+        Number senderAccountId = (Number) transactionJsonObj.getValue(SENDER_ACCOUNT_ID);
+        if (Operation.withdraw.name().equals(operation) || (senderAccountId != null && senderAccountId.longValue() == accountId)) {
+            amount = -amount;
+        }
+        return amount;
+    }
+
+    /**
+     * An account id field as a primitive, 0 when the field is absent. Reads the stored number without boxing.
+     */
+    public static long accountId(JsonObject transaction, String key) {
+        Number accountId = (Number) transaction.getValue(key);
+        return accountId == null ? 0 : accountId.longValue();
+    }
+
+    public static List<Long> relatedAccountIds(JsonObject transaction) {
+        Long accountId = transaction.getLong(ACCOUNT_ID);
+        if (accountId != null) {
+            return Collections.singletonList(accountId);
+        }
+        return Arrays.asList(transaction.getLong(SENDER_ACCOUNT_ID), transaction.getLong(RECEIVER_ACCOUNT_ID));
+    }
+}
@@ -0,0 +1,140 @@
+package com.transfers.api.ledger;
+
+import io.vertx.core.json.JsonObject;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static com.transfers.api.ledger.TransactionAmounts.relatedAccountIds;
+import static com.transfers.api.util.Consts.*;
+
+/**
+ * Cold tier for old transactions: immutable, gzip compressed segment files of JSON lines on local disk.
+ * <p>
+ * Every segment holds a contiguous range of transaction ids. The in-memory sparse index maps an account
+ * to the segments that mention it, so history reads open just those segments. Segment I/O methods block
+ * and must be called from a worker thread, the index itself is only touched from the repository event loop.
+ */
+public class TransactionArchive {
+
+    private static final String SEGMENT_SUFFIX = ".json.gz";
+
+    private final Path dir;
+    private final List<Segment> segments = new ArrayList<>();
+    private final Map<Long, List<Segment>> segmentsByAccount = new HashMap<>();
+    private long archivedUpTo;
+
+    public TransactionArchive(String dir) {
+        this.dir = Paths.get(dir);
+    }
+
+    /**
+     * The in-memory ledger does not survive a restart, so segments left by a previous run are discarded.
+     */
+    public void reset() throws IOException {
+        Files.createDirectories(dir);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "segment-*")) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Highest transaction id moved to the archive, every transaction with a bigger id is still in memory.
+     */
+    public long archivedUpTo() {
+        return archivedUpTo;
+    }
+
+    public boolean hasSegments(Long accountId) {
+        return segmentsByAccount.containsKey(accountId);
+    }
+
+    /**
+     * Every segment, in id order.
+     */
+    public List<Segment> segments() {
+        return new ArrayList<>(segments);
+    }
+
+    public List<Segment> segments(Long accountId) {
+        return new ArrayList<>(segmentsByAccount.getOrDefault(accountId, Collections.emptyList()));
+    }
+
+    /**
+     * Blocking: writes transactions, ordered by id, as a new segment.
+     */
+    public Segment write(List<JsonObject> transactions) throws IOException {
+        long firstId = transactions.get(0).getLong(ID);
+        long lastId = transactions.get(transactions.size() - 1).getLong(ID);
+        String name = String.format("segment-%020d-%020d", firstId, lastId);
+        Set<Long> accountIds = new TreeSet<>();
+        Path segmentFile = dir.resolve(name + SEGMENT_SUFFIX);
+        Path tmp = dir.resolve(name + SEGMENT_SUFFIX + ".tmp");
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(Files.newOutputStream(tmp)), StandardCharsets.UTF_8))) {
+            for (JsonObject transaction : transactions) {
+                writer.write(transaction.encode());
+                writer.write('\n');
+                accountIds.addAll(relatedAccountIds(transaction));
+            }
+        }
+        Files.move(tmp, segmentFile, StandardCopyOption.ATOMIC_MOVE);
+        return new Segment(segmentFile, firstId, lastId, accountIds);
+    }
+
+    /**
+     * Makes a written segment visible to readers. Call on the event loop after {@link #write(List)}.
+     */
+    public void register(Segment segment) {
+        segments.add(segment);
+        segment.accountIds.forEach(accountId -> segmentsByAccount
+                .computeIfAbsent(accountId, id -> new ArrayList<>())
+                .add(segment));
+        archivedUpTo = Math.max(archivedUpTo, segment.lastId);
+    }
+
+    /**
+     * Blocking: reads every transaction of the given segments, in id order.
+     */
+    public static List<JsonObject> read(List<Segment> segments) throws IOException {
+        List<JsonObject> transactions = new ArrayList<>();
+        for (Segment segment : segments) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new GZIPInputStream(Files.newInputStream(segment.file)), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    transactions.add(new JsonObject(line));
+                }
+            }
+        }
+        return transactions;
+    }
+
+    public static class Segment {
+        private final Path file;
+        private final long firstId;
+        private final long lastId;
+        private final Set<Long> accountIds;
+
+        private Segment(Path file, long firstId, long lastId, Set<Long> accountIds) {
+            this.file = file;
+            this.firstId = firstId;
+            this.lastId = lastId;
+            this.accountIds = accountIds;
+        }
+
+        public long firstId() {
+            return firstId;
+        }
+
+        public long lastId() {
+            return lastId;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.transfers.api.ledger;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.Arrays;
+
+/**
+ * Outbound velocity rules per account: at most {@code max.amount} minor units and {@code max.count}
+ * debits within a sliding window of {@code window.seconds}.
+ * <p>
+ * Each rule keeps, per account, a ring of {@code buckets} sub-window counters plus running totals, so a
+ * check and an update are O(1): advancing the ring only clears the buckets that fell out of the window.
+ * Rings are allocated on an account's first debit. Only the repository event loop touches it.
+ */
+public class VelocityLimits {
+
+    private final Rule[] rules;
+    private Window[][] windows = new Window[1024][];
+
+    public VelocityLimits(JsonArray rulesConfig) {
+        rules = new Rule[rulesConfig.size()];
+        for (int i = 0; i < rules.length; i++) {
+            rules[i] = new Rule("velocity.rules[" + i + "]", rulesConfig.getJsonObject(i));
+        }
+    }
+
+    public boolean isEmpty() {
+        return rules.length == 0;
+    }
+
+    /**
+     * Records a debit of {@code amount} if it keeps the account within every rule.
+     *
+     * @return false, recording nothing, if the debit would exceed a rule
+     */
+    public boolean tryRecord(long accountId, long amount, long nowMillis) {
+        Window[] accountWindows = windows(accountId);
+        for (int i = 0; i < rules.length; i++) {
+            Window window = accountWindows[i];
+            window.advance(nowMillis / rules[i].bucketMillis);
+            if (window.count >= rules[i].maxCount || amount > rules[i].maxAmount - window.amount) {
+                return false;
+            }
+        }
+        for (Window window : accountWindows) {
+            window.add(amount);
+        }
+        return true;
+    }
+
+    private Window[] windows(long accountId) {
+        if (accountId >= windows.length) {
+            windows = Arrays.copyOf(windows, (int) Math.max(accountId + 1, windows.length * 2L));
+        }
+        Window[] accountWindows = windows[(int) accountId];
+        if (accountWindows == null) {
+            accountWindows = new Window[rules.length];
+            for (int i = 0; i < rules.length; i++) {
+                accountWindows[i] = new Window(rules[i].buckets);
+            }
+            windows[(int) accountId] = accountWindows;
+        }
+        return accountWindows;
+    }
+
+    private static class Rule {
+        private final int buckets;
+        private final long bucketMillis;
+        private final long maxAmount;
+        private final long maxCount;
+
+        private Rule(String path, JsonObject config) {
+            Long windowSeconds = config.getLong("window.seconds");
+            if (windowSeconds == null || windowSeconds < 1) {
+                throw new IllegalArgumentException(path + ": window.seconds must be a positive number of seconds");
+            }
+            int bucketCount = config.getInteger("buckets", 60);
+            if (bucketCount < 1) {
+                throw new IllegalArgumentException(path + ": buckets must be positive");
+            }
+            long windowMillis = windowSeconds * 1000;
+            buckets = (int) Math.min(bucketCount, windowMillis);
+            bucketMillis = windowMillis / buckets;
+            maxAmount = config.getLong("max.amount", Long.MAX_VALUE);
+            maxCount = config.getLong("max.count", Long.MAX_VALUE);
+        }
+    }
+
+    private static class Window {
+        private final long[] amounts;
+        private final int[] counts;
+        private long bucket;
+        private long amount;
+        private long count;
+
+        private Window(int buckets) {
+            amounts = new long[buckets];
+            counts = new int[buckets];
+        }
+
+        /**
+         * Moves the newest bucket to {@code current}, expiring the buckets in between.
+         */
+        private void advance(long current) {
+            if (current <= bucket) {
+                return;
+            }
+            if (current - bucket >= amounts.length) {
+                Arrays.fill(amounts, 0);
+                Arrays.fill(counts, 0);
+                amount = 0;
+                count = 0;
+            } else {
+                while (bucket < current) {
+                    int slot = (int) (++bucket % amounts.length);
+                    amount -= amounts[slot];
+                    count -= counts[slot];
+                    amounts[slot] = 0;
+                    counts[slot] = 0;
+                }
+            }
+            bucket = current;
+        }
+
+        private void add(long debit) {
+            int slot = (int) (bucket % amounts.length);
+            amounts[slot] += debit;
+            counts[slot]++;
+            amount += debit;
+            count++;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.transfers.api.ratelimit;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Token buckets per client key, striped so concurrent callers only contend on the stripe of their key.
+ * <p>
+ * Each stripe keeps its buckets in access order. A bucket that has been idle long enough to refill
+ * completely is indistinguishable from a new one, so {@link #evictIdle(long)} drops those from the
+ * least recently used end without losing state. A per-stripe cap bounds memory for bursts of new clients:
+ * a full stripe only replaces a full bucket, and otherwise denies new keys until one refills, so a flood of
+ * new keys cannot reset the buckets of clients that are being limited.
+ */
+public class RateLimiter {
+
+    private final double capacity;
+    private final double tokensPerNano;
+    private final long fullRefillNanos;
+    private final Stripe[] stripes;
+
+    public RateLimiter(long capacity, double refillPerSecond, int maxClients) {
+        this.capacity = capacity;
+        this.tokensPerNano = refillPerSecond / 1_000_000_000d;
+        this.fullRefillNanos = (long) (capacity / tokensPerNano);
+        int stripeCount = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4 - 1) << 1;
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe(Math.max(1, maxClients / stripeCount));
+        }
+    }
+
+    /**
+     * Takes one token from the client's bucket.
+     *
+     * @return 0 if the request is allowed, otherwise the nanoseconds until a token becomes available
+     */
+    public long tryAcquire(String clientKey, long nowNanos) {
+        int hash = clientKey.hashCode();
+        Stripe stripe = stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+        synchronized (stripe) {
+            Bucket bucket = stripe.buckets.get(clientKey);
+            if (bucket == null) {
+                if (stripe.buckets.size() >= stripe.maxBuckets) {
+                    Iterator<Bucket> eldest = stripe.buckets.values().iterator();
+                    long idleNanos = nowNanos - eldest.next().refilledAt;
+                    if (idleNanos < fullRefillNanos) {
+                        return fullRefillNanos - idleNanos;
+                    }
+                    eldest.remove();
+                }
+                bucket = new Bucket(capacity, nowNanos);
+                stripe.buckets.put(clientKey, bucket);
+            }
+            bucket.tokens = Math.min(capacity, bucket.tokens + (nowNanos - bucket.refilledAt) * tokensPerNano);
+            bucket.refilledAt = nowNanos;
+            if (bucket.tokens >= 1) {
+                bucket.tokens -= 1;
+                return 0;
+            }
+            return (long) Math.ceil((1 - bucket.tokens) / tokensPerNano);
+        }
+    }
+
+    public void evictIdle(long nowNanos) {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                Iterator<Bucket> iterator = stripe.buckets.values().iterator();
+                while (iterator.hasNext() && nowNanos - iterator.next().refilledAt >= fullRefillNanos) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    private static class Stripe {
+        private final Map<String, Bucket> buckets = new LinkedHashMap<>(16, 0.75f, true);
+        private final int maxBuckets;
+
+        private Stripe(int maxBuckets) {
+            this.maxBuckets = maxBuckets;
+        }
+    }
+
+    private static class Bucket {
+        private double tokens;
+        private long refilledAt;
+
+        private Bucket(double tokens, long refilledAt) {
+            this.tokens = tokens;
+            this.refilledAt = refilledAt;
+        }
+    }
+}
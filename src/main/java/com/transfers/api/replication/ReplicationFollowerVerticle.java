@@ -0,0 +1,143 @@
+package com.transfers.api.replication;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.NetClient;
+import io.vertx.core.net.NetSocket;
+import io.vertx.core.parsetools.RecordParser;
+
+import static com.transfers.api.util.Address.*;
+import static com.transfers.api.util.Consts.SEQUENCE;
+import static com.transfers.api.util.Consts.TYPE;
+
+/**
+ * Follows a leader's operation log and hands every entry, in order, to the local repository.
+ * <p>
+ * The snapshot that opens a connection is passed on undecoded; the repository decodes and swaps it in off the
+ * event loop while the connection is paused. The follower counts as fresh only for what the repository has
+ * confirmed applying. A gap in the sequence drops the connection and the follower resynchronises from a new
+ * snapshot. On promotion the follower stops following, lets the repository continue the id counters from the
+ * replicated state and, when {@code replication.port} is configured, starts shipping its own log.
+ */
+public class ReplicationFollowerVerticle extends AbstractVerticle {
+
+    private NetClient client;
+    private NetSocket socket;
+    private RecordParser parser;
+    private long appliedSequence = -1;
+    // the last sequence the repository confirmed, heartbeats refresh staleness only once it caught up
+    private long confirmedSequence = -1;
+    private boolean promoted;
+
+    @Override
+    public void start() {
+        ReplicationState.setRole(vertx, ReplicationState.FOLLOWER);
+        vertx.eventBus().consumer(PROMOTE_ADDR, message -> {
+            if (promoted) {
+                message.fail(409, "Already promoted");
+                return;
+            }
+            promoted = true;
+            if (socket != null) {
+                socket.close();
+            }
+            vertx.eventBus().request(REPOSITORY_PROMOTE_ADDR, null, promotedRepository -> {
+                if (promotedRepository.failed()) {
+                    ReplyException cause = (ReplyException) promotedRepository.cause();
+                    message.fail(cause.failureCode() < 0 ? 500 : cause.failureCode(), cause.getMessage());
+                    promoted = false;
+                    connect();
+                    return;
+                }
+                ReplicationState.setRole(vertx, ReplicationState.LEADER);
+                if (config().containsKey("replication.port")) {
+                    vertx.deployVerticle(ReplicationLeaderVerticle.class.getName(), new DeploymentOptions().setConfig(config()));
+                }
+                message.reply(promotedRepository.result().body());
+            });
+        });
+        client = vertx.createNetClient();
+        connect();
+    }
+
+    private void connect() {
+        client.connect(config().getInteger("replication.leader.port"),
+                config().getString("replication.leader.host", "localhost"), connected -> {
+                    if (connected.failed()) {
+                        reconnect();
+                        return;
+                    }
+                    socket = connected.result();
+                    appliedSequence = -1;
+                    confirmedSequence = -1;
+                    parser = ReplicationFrames.parser(socket, this::onFrame);
+                    socket.closeHandler(v -> {
+                        socket = null;
+                        reconnect();
+                    });
+                });
+    }
+
+    private void reconnect() {
+        if (!promoted) {
+            vertx.setTimer(config().getLong("replication.reconnect.ms", 1000L), timerId -> connect());
+        }
+    }
+
+    private void onFrame(Buffer frame) {
+        if (promoted) {
+            return;
+        }
+        if (appliedSequence < 0) {
+            restore(frame);
+            return;
+        }
+        JsonObject entry = frame.toJsonObject();
+        if (ReplicationFrames.HEARTBEAT.equals(entry.getString(TYPE))) {
+            if (confirmedSequence == appliedSequence) {
+                ReplicationState.touch(vertx);
+            }
+        } else if (entry.getLong(SEQUENCE) != appliedSequence + 1) {
+            socket.close();
+        } else {
+            appliedSequence++;
+            NetSocket connection = socket;
+            vertx.eventBus().<Long>request(REPLICATION_APPLY_ADDR, entry, applied -> {
+                if (applied.succeeded() && connection == socket) {
+                    confirmed(applied.result().body());
+                }
+            });
+        }
+    }
+
+    /**
+     * Hands the snapshot frame to the repository and reads nothing else until it has been swapped in.
+     */
+    private void restore(Buffer snapshot) {
+        NetSocket connection = socket;
+        parser.pause();
+        DeliveryOptions options = new DeliveryOptions()
+                .setSendTimeout(config().getLong("replication.restore.timeout.ms", 600_000L));
+        vertx.eventBus().<Long>request(REPLICATION_RESTORE_ADDR, snapshot, options, restored -> {
+            if (connection != socket) {
+                return;
+            }
+            if (restored.failed()) {
+                socket.close();
+                return;
+            }
+            appliedSequence = restored.result().body();
+            confirmed(appliedSequence);
+            parser.resume();
+        });
+    }
+
+    private void confirmed(long sequence) {
+        confirmedSequence = Math.max(confirmedSequence, sequence);
+        ReplicationState.touch(vertx);
+    }
+}
@@ -0,0 +1,49 @@
+package com.transfers.api.replication;
+
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.parsetools.RecordParser;
+import io.vertx.core.streams.ReadStream;
+
+/**
+ * Wire format of the replication stream: every entry is a JSON object prefixed by its length as a big-endian int.
+ * Entries carry a {@code type} and, except heartbeats, the leader's {@code seq} after applying them. The first
+ * frame on a connection is always the snapshot.
+ */
+public class ReplicationFrames {
+
+    public static final String SNAPSHOT = "snapshot";
+    public static final String ACCOUNT = "account";
+    public static final String TRANSACTION = "transaction";
+    public static final String HEARTBEAT = "heartbeat";
+
+    public static Buffer encode(JsonObject entry) {
+        Buffer json = entry.toBuffer();
+        return Buffer.buffer(4 + json.length())
+                .appendInt(json.length())
+                .appendBuffer(json);
+    }
+
+    /**
+     * Splits a stream into frames, without decoding them. Pausing the parser pauses the stream.
+     */
+    public static RecordParser parser(ReadStream<Buffer> stream, Handler<Buffer> frameHandler) {
+        RecordParser parser = RecordParser.newFixed(4, stream);
+        parser.handler(new Handler<Buffer>() {
+            private boolean expectingLength = true;
+
+            @Override
+            public void handle(Buffer record) {
+                expectingLength = !expectingLength;
+                if (!expectingLength) {
+                    parser.fixedSizeMode(record.getInt(0));
+                } else {
+                    parser.fixedSizeMode(4);
+                    frameHandler.handle(record);
+                }
+            }
+        });
+        return parser;
+    }
+}
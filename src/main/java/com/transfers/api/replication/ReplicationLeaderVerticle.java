@@ -0,0 +1,131 @@
+package com.transfers.api.replication;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Promise;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.NetSocket;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+import static com.transfers.api.util.Address.REPLICATION_LOG_ADDR;
+import static com.transfers.api.util.Address.REPLICATION_SNAPSHOT_ADDR;
+import static com.transfers.api.util.Consts.SEQUENCE;
+import static com.transfers.api.util.Consts.TYPE;
+
+/**
+ * Ships the repository's ordered operation log to followers over TCP.
+ * <p>
+ * A connecting follower first receives a snapshot of the repository, then every operation applied after it
+ * and periodic heartbeats. The snapshot is written in slices as the socket drains. Operations published
+ * meanwhile, or while the socket's write queue is full, wait in a backlog and are filtered by sequence, so
+ * nothing is lost or applied twice. A follower whose backlog stays above {@code replication.max.backlog}
+ * entries or does not drain within {@code replication.max.backlog.ms} after its snapshot is disconnected
+ * and resynchronises from a fresh snapshot when it reconnects.
+ */
+public class ReplicationLeaderVerticle extends AbstractVerticle {
+
+    private static final int SNAPSHOT_SLICE = 64 * 1024;
+
+    @Override
+    public void start(Promise<Void> startPromise) {
+        ReplicationState.setRole(vertx, ReplicationState.LEADER);
+        vertx.createNetServer()
+                .connectHandler(FollowerConnection::new)
+                .listen(config().getInteger("replication.port"), server -> {
+                    if (server.succeeded()) {
+                        startPromise.complete();
+                    } else {
+                        startPromise.fail(server.cause());
+                    }
+                });
+    }
+
+    private class FollowerConnection {
+        private final NetSocket socket;
+        private final MessageConsumer<JsonObject> log;
+        private final long heartbeatTimer;
+        private final int maxBacklog = config().getInteger("replication.max.backlog", 100_000);
+        private final long maxBacklogMs = config().getLong("replication.max.backlog.ms", 10_000L);
+        private final Queue<JsonObject> backlog = new ArrayDeque<>();
+        private long backlogSince;
+        private Buffer snapshot;
+        private int snapshotWritten;
+        private long shippedSequence = -1;
+        private boolean draining;
+
+        private FollowerConnection(NetSocket socket) {
+            this.socket = socket;
+            this.log = vertx.eventBus().localConsumer(REPLICATION_LOG_ADDR, message -> onApplied(message.body()));
+            this.heartbeatTimer = vertx.setPeriodic(config().getLong("replication.heartbeat.ms", 500L), timerId -> heartbeat());
+            socket.closeHandler(v -> {
+                log.unregister();
+                vertx.cancelTimer(heartbeatTimer);
+            });
+            socket.drainHandler(v -> drain());
+            vertx.eventBus().<Buffer>request(REPLICATION_SNAPSHOT_ADDR, null, built -> {
+                if (built.failed()) {
+                    socket.close();
+                    return;
+                }
+                // the repository encodes the snapshot off the event loop and sends its sequence as a header
+                snapshot = built.result().body();
+                shippedSequence = Long.parseLong(built.result().headers().get(SEQUENCE));
+                drain();
+            });
+        }
+
+        private void onApplied(JsonObject entry) {
+            backlog.add(entry);
+            if (backlog.size() == 1) {
+                drain();
+            }
+            if (snapshot == null && shippedSequence >= 0 && backlog.size() > maxBacklog) {
+                socket.close();
+            }
+        }
+
+        private void heartbeat() {
+            if (shippedSequence < 0 || snapshot != null) {
+                return;
+            }
+            if (backlog.isEmpty() && !socket.writeQueueFull()) {
+                socket.write(ReplicationFrames.encode(new JsonObject().put(TYPE, ReplicationFrames.HEARTBEAT)));
+            } else if (System.currentTimeMillis() - backlogSince > maxBacklogMs) {
+                socket.close();
+            }
+        }
+
+        /**
+         * Writes the rest of the snapshot, then the backlog, until the write queue is full. The drain handler
+         * calls it again once the follower has caught up on reading; it may do so from inside a write.
+         */
+        private void drain() {
+            if (shippedSequence < 0 || draining) {
+                return;
+            }
+            draining = true;
+            while (snapshot != null && !socket.writeQueueFull()) {
+                int start = snapshotWritten;
+                snapshotWritten = Math.min(start + SNAPSHOT_SLICE, snapshot.length());
+                socket.write(snapshot.slice(start, snapshotWritten));
+                if (snapshotWritten == snapshot.length()) {
+                    snapshot = null;
+                }
+            }
+            while (snapshot == null && !backlog.isEmpty() && !socket.writeQueueFull()) {
+                JsonObject entry = backlog.poll();
+                if (entry.getLong(SEQUENCE) > shippedSequence) {
+                    shippedSequence = entry.getLong(SEQUENCE);
+                    socket.write(ReplicationFrames.encode(entry));
+                }
+            }
+            if (backlog.isEmpty() || snapshot != null) {
+                backlogSince = System.currentTimeMillis();
+            }
+            draining = false;
+        }
+    }
+}
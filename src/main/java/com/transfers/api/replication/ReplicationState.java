@@ -0,0 +1,44 @@
+package com.transfers.api.replication;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.shareddata.LocalMap;
+
+/**
+ * Replication role and follower freshness, shared between the verticles of one process.
+ */
+public class ReplicationState {
+
+    public static final String LEADER = "leader";
+    public static final String FOLLOWER = "follower";
+
+    private static final String REPLICATION_MAP = "replication";
+    private static final String ROLE = "role";
+    private static final String LAST_CONTACT = "lastContactAt";
+
+    public static void setRole(Vertx vertx, String role) {
+        replication(vertx).put(ROLE, role);
+    }
+
+    public static boolean isFollower(Vertx vertx) {
+        return FOLLOWER.equals(replication(vertx).get(ROLE));
+    }
+
+    /**
+     * Records that the follower is in sync with the leader as of now.
+     */
+    public static void touch(Vertx vertx) {
+        replication(vertx).put(LAST_CONTACT, System.currentTimeMillis());
+    }
+
+    /**
+     * @return milliseconds since the follower last heard from the leader, Long.MAX_VALUE before the first snapshot
+     */
+    public static long staleness(Vertx vertx) {
+        Long lastContact = (Long) replication(vertx).get(LAST_CONTACT);
+        return lastContact == null ? Long.MAX_VALUE : System.currentTimeMillis() - lastContact;
+    }
+
+    private static LocalMap<Object, Object> replication(Vertx vertx) {
+        return vertx.sharedData().getLocalMap(REPLICATION_MAP);
+    }
+}
@@ -0,0 +1,122 @@
+package com.transfers.api.stream;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.RoutingContext;
+
+import java.util.*;
+
+import static com.transfers.api.util.Address.BALANCE_UPDATES_ADDR;
+import static com.transfers.api.util.Consts.*;
+
+/**
+ * Pushes balance changes to Server-Sent Events subscribers.
+ * <p>
+ * A single event bus consumer receives every balance update published by the repository and
+ * routes it through an account index to the interested subscribers only. Updates are coalesced
+ * per account and flushed on a timer, so a burst on one account produces one event per flush and
+ * a slow consumer only accumulates the latest state instead of blocking the repository.
+ */
+public class BalanceStream {
+
+    private final Map<Long, Set<Subscriber>> subscribersByAccount = new HashMap<>();
+    private final Set<Subscriber> dirtySubscribers = new LinkedHashSet<>();
+    private final SubscriberCount subscriberCount;
+
+    public BalanceStream(Vertx vertx, long flushIntervalMs) {
+        subscriberCount = SubscriberCount.get(vertx);
+        vertx.eventBus().<JsonObject>localConsumer(BALANCE_UPDATES_ADDR, message -> onUpdate(message.body()));
+        vertx.setPeriodic(flushIntervalMs, timerId -> flush());
+    }
+
+    public void subscribe(RoutingContext rc, Set<Long> accountIds) {
+        HttpServerResponse response = rc.response()
+                .putHeader("content-type", "text/event-stream")
+                .putHeader("cache-control", "no-cache")
+                .setChunked(true);
+        Subscriber subscriber = new Subscriber(response, accountIds);
+        accountIds.forEach(accountId -> subscribersByAccount
+                .computeIfAbsent(accountId, id -> new HashSet<>())
+                .add(subscriber));
+        subscriberCount.increment();
+        response.closeHandler(v -> unsubscribe(subscriber));
+        response.drainHandler(v -> subscriber.flush());
+        response.write(":subscribed\n\n");
+    }
+
+    private void unsubscribe(Subscriber subscriber) {
+        subscriber.accountIds.forEach(accountId -> {
+            Set<Subscriber> subscribers = subscribersByAccount.get(accountId);
+            if (subscribers != null && subscribers.remove(subscriber) && subscribers.isEmpty()) {
+                subscribersByAccount.remove(accountId);
+            }
+        });
+        dirtySubscribers.remove(subscriber);
+        subscriberCount.decrement();
+    }
+
+    private void onUpdate(JsonObject update) {
+        Set<Subscriber> subscribers = subscribersByAccount.get(update.getLong(ACCOUNT_ID));
+        if (subscribers == null) {
+            return;
+        }
+        subscribers.forEach(subscriber -> {
+            subscriber.coalesce(update);
+            dirtySubscribers.add(subscriber);
+        });
+    }
+
+    private void flush() {
+        Iterator<Subscriber> iterator = dirtySubscribers.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().flush()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static class Subscriber {
+        private final HttpServerResponse response;
+        private final Set<Long> accountIds;
+        private final Map<Long, JsonObject> pending = new LinkedHashMap<>();
+
+        private Subscriber(HttpServerResponse response, Set<Long> accountIds) {
+            this.response = response;
+            this.accountIds = accountIds;
+        }
+
+        /**
+         * Merges an update into the pending event of its account, which keeps the latest balance and operation
+         * and sums the amounts, so {@code amount} is the net change over the merged operations.
+         */
+        private void coalesce(JsonObject update) {
+            JsonObject previous = pending.get(update.getLong(ACCOUNT_ID));
+            JsonObject event = update.copy().put(COALESCED, 1);
+            if (previous != null) {
+                event.put(COALESCED, previous.getInteger(COALESCED) + 1)
+                        .put(AMOUNT, previous.getLong(AMOUNT) + update.getLong(AMOUNT));
+            }
+            pending.put(update.getLong(ACCOUNT_ID), event);
+        }
+
+        /**
+         * @return true when everything pending was written, false when the consumer is too slow
+         * and the remaining updates are kept (and further coalesced) until the connection drains
+         */
+        private boolean flush() {
+            Iterator<JsonObject> iterator = pending.values().iterator();
+            while (iterator.hasNext()) {
+                if (response.writeQueueFull()) {
+                    return false;
+                }
+                response.write(Buffer.buffer("event: balance\ndata: ")
+                        .appendBuffer(iterator.next().toBuffer())
+                        .appendString("\n\n"));
+                iterator.remove();
+            }
+            return true;
+        }
+    }
+}
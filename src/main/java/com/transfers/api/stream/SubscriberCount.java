@@ -0,0 +1,38 @@
+package com.transfers.api.stream;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Number of open balance streams in the process, so the repository publishes balance updates only while
+ * someone listens. One instance is shared through a local map; callers keep the reference.
+ */
+public class SubscriberCount implements Shareable {
+
+    private static final String STREAM_MAP = "stream";
+    private static final String SUBSCRIBERS = "subscribers";
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    public static SubscriberCount get(Vertx vertx) {
+        LocalMap<String, SubscriberCount> stream = vertx.sharedData().getLocalMap(STREAM_MAP);
+        SubscriberCount created = new SubscriberCount();
+        SubscriberCount existing = stream.putIfAbsent(SUBSCRIBERS, created);
+        return existing == null ? created : existing;
+    }
+
+    public boolean any() {
+        return count.get() > 0;
+    }
+
+    void increment() {
+        count.incrementAndGet();
+    }
+
+    void decrement() {
+        count.decrementAndGet();
+    }
+}
@@ -0,0 +1,67 @@
+package com.transfers.api.tracing;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Promise;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.file.AsyncFile;
+import io.vertx.core.file.OpenOptions;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+import static com.transfers.api.util.Address.TRACE_SPANS_ADDR;
+
+/**
+ * Writes finished spans as Zipkin v2 JSON, one span per line, to {@code tracing.file} or to the log when
+ * no file is configured. Spans are buffered and flushed every {@code tracing.flush.interval.ms}, so the
+ * request path only pays for an event-bus send.
+ */
+public class SpanExporterVerticle extends AbstractVerticle {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("tracing");
+
+    private AsyncFile file;
+    private Buffer pending = Buffer.buffer();
+
+    @Override
+    public void start(Promise<Void> startPromise) {
+        String path = config().getString("tracing.file");
+        vertx.eventBus().<JsonObject>localConsumer(TRACE_SPANS_ADDR, message -> {
+            if (path == null) {
+                LOGGER.info(message.body().encode());
+            } else {
+                pending.appendBuffer(message.body().toBuffer()).appendByte((byte) '\n');
+            }
+        });
+        if (path == null) {
+            startPromise.complete();
+            return;
+        }
+        vertx.fileSystem().open(path, new OpenOptions().setCreate(true).setAppend(true), opened -> {
+            if (opened.failed()) {
+                startPromise.fail(opened.cause());
+                return;
+            }
+            file = opened.result();
+            vertx.setPeriodic(config().getLong("tracing.flush.interval.ms", 1000L), timerId -> flush());
+            startPromise.complete();
+        });
+    }
+
+    @Override
+    public void stop(Promise<Void> stopPromise) {
+        if (file == null) {
+            stopPromise.complete();
+            return;
+        }
+        flush();
+        file.close(stopPromise);
+    }
+
+    private void flush() {
+        if (pending.length() > 0) {
+            file.write(pending);
+            pending = Buffer.buffer();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.transfers.api.tracing;
+
+import io.vertx.core.MultiMap;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.json.JsonObject;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import static com.transfers.api.util.Address.TRACE_SPANS_ADDR;
+
+/**
+ * Context of a sampled request: a W3C trace id plus the span the next stages hang off.
+ * <p>
+ * The HTTP layer starts a trace for sampled requests only and passes it to the repository as event-bus
+ * headers, so unsampled requests never allocate one and cost a single header lookup on the consumer side.
+ * Finished stages are sent to the {@link SpanExporterVerticle} as Zipkin v2 spans. Durations come from
+ * {@link System#nanoTime()}, which every verticle of the process shares.
+ */
+public class Trace {
+
+    public static final String TRACEPARENT = "traceparent";
+    private static final String SENT_AT = "x-sent-at-nanos";
+    private static final String SERVICE_NAME = "money-transfers-api";
+    private static final Pattern TRACEPARENT_PATTERN = Pattern.compile("^00-[0-9a-f]{32}-[0-9a-f]{16}-[0-9a-f]{2}$");
+
+    private static final long EPOCH_MICROS_AT_START = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+    private static final long NANOS_AT_START = System.nanoTime();
+
+    private final Vertx vertx;
+    private final String traceId;
+    private final String parentId;
+    private final String spanId;
+    private final long startNanos = System.nanoTime();
+
+    private Trace(Vertx vertx, String traceId, String parentId, String spanId) {
+        this.vertx = vertx;
+        this.traceId = traceId;
+        this.parentId = parentId;
+        this.spanId = spanId;
+    }
+
+    /**
+     * Continues a sampled incoming trace, otherwise starts a new one with the given probability.
+     *
+     * @return null if the request is not traced
+     */
+    public static Trace start(Vertx vertx, String traceparent, double sampleRate) {
+        if (traceparent != null && TRACEPARENT_PATTERN.matcher(traceparent).matches()) {
+            if ((Integer.parseInt(traceparent.substring(53), 16) & 1) == 0) {
+                return null;
+            }
+            return new Trace(vertx, traceparent.substring(3, 35), traceparent.substring(36, 52), newId());
+        }
+        if (sampleRate <= 0 || ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return null;
+        }
+        return new Trace(vertx, newId() + newId(), null, newId());
+    }
+
+    /**
+     * The trace a message was sent under, or null if the sender did not sample it. Also records the time
+     * the message waited for the consumer as the {@code queue} span.
+     */
+    public static Trace received(Vertx vertx, Message<?> message, String address) {
+        MultiMap headers = message.headers();
+        String traceparent = headers.get(TRACEPARENT);
+        if (traceparent == null) {
+            return null;
+        }
+        Trace trace = new Trace(vertx, traceparent.substring(3, 35), traceparent.substring(36, 52), newId());
+        String sentAt = headers.get(SENT_AT);
+        if (sentAt != null) {
+            trace.record("queue " + address, Long.parseLong(sentAt), trace.startNanos);
+        }
+        return trace;
+    }
+
+    /**
+     * When the request reached this hop.
+     */
+    public long startNanos() {
+        return startNanos;
+    }
+
+    /**
+     * Adds the headers carrying this trace to the next hop; stages recorded there become children of this span.
+     */
+    public DeliveryOptions deliveryOptions(DeliveryOptions options, long sentAtNanos) {
+        return options
+                .addHeader(TRACEPARENT, "00-" + traceId + "-" + spanId + "-01")
+                .addHeader(SENT_AT, String.valueOf(sentAtNanos));
+    }
+
+    /**
+     * Exports a stage as a child of this trace's span.
+     */
+    public void record(String name, long startNanos, long endNanos) {
+        export(span(newId(), spanId, name, startNanos, endNanos));
+    }
+
+    /**
+     * Exports this trace's own span, which covers the whole request on this hop.
+     */
+    public void finish(String name, long endNanos, JsonObject tags) {
+        JsonObject span = span(spanId, parentId, name, startNanos, endNanos);
+        export(tags == null ? span : span.put("tags", tags));
+    }
+
+    private JsonObject span(String id, String parentId, String name, long startNanos, long endNanos) {
+        JsonObject span = new JsonObject()
+                .put("traceId", traceId)
+                .put("id", id)
+                .put("name", name)
+                .put("timestamp", EPOCH_MICROS_AT_START + (startNanos - NANOS_AT_START) / 1000)
+                .put("duration", Math.max(1, (endNanos - startNanos) / 1000))
+                .put("localEndpoint", new JsonObject().put("serviceName", SERVICE_NAME));
+        return parentId == null ? span : span.put("parentId", parentId);
+    }
+
+    private void export(JsonObject span) {
+        vertx.eventBus().send(TRACE_SPANS_ADDR, span);
+    }
+
+    private static String newId() {
+        long id;
+        do {
+            id = ThreadLocalRandom.current().nextLong();
+        } while (id == 0);
+        return String.format("%016x", id);
+    }
+}
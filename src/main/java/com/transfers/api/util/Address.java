@@ -5,6 +5,17 @@ public class Address {
     public static final String ACCOUNT_ADDR = "account";
     public static final String BALANCE_OPERATION_ADDR = "balance-operation";
     public static final String BALANCE_ADDR = "balance";
+    public static final String BALANCES_ADDR = "balances";
     public static final String NEW_TRANSFER_ADDR = "new-transfer";
     public static final String TRANSACTIONS_ADDR = "transactions";
+    public static final String SUMMARY_ADDR = "summary";
+    public static final String VERIFY_LEDGER_ADDR = "verify-ledger";
+    public static final String BALANCE_UPDATES_ADDR = "balance-updates";
+    public static final String REPLICATION_LOG_ADDR = "replication-log";
+    public static final String REPLICATION_SNAPSHOT_ADDR = "replication-snapshot";
+    public static final String REPLICATION_APPLY_ADDR = "replication-apply";
+    public static final String REPLICATION_RESTORE_ADDR = "replication-restore";
+    public static final String PROMOTE_ADDR = "replication-promote";
+    public static final String REPOSITORY_PROMOTE_ADDR = "repository-promote";
+    public static final String TRACE_SPANS_ADDR = "trace-spans";
 }
@@ -2,6 +2,7 @@ package com.transfers.api.util;
 
 public class Consts {
     public static final String ID = "id";
+    public static final String NAME = "name";
     public static final String BALANCE = "balance";
     public static final String AMOUNT = "amount";
     public static final String OPERATION = "operation";
@@ -10,4 +11,28 @@ public class Consts {
     public static final String ACCOUNT_ID = "accountId";
     public static final String SENDER_ACCOUNT_ID = "senderAccountId";
     public static final String RECEIVER_ACCOUNT_ID = "receiverAccountId";
+    public static final String TRANSACTION_ID = "transactionId";
+    public static final String IDS = "ids";
+    public static final String COALESCED = "coalesced";
+    public static final String BALANCES = "balances";
+    public static final String NOT_FOUND = "notFound";
+    public static final String FROM = "from";
+    public static final String TO = "to";
+    public static final String GRANULARITY = "granularity";
+    public static final String PERIOD = "period";
+    public static final String PERIODS = "periods";
+    public static final String CREDIT = "credit";
+    public static final String DEBIT = "debit";
+    public static final String CREDIT_COUNT = "creditCount";
+    public static final String DEBIT_COUNT = "debitCount";
+    public static final String SEQUENCE = "seq";
+    public static final String TYPE = "type";
+    public static final String ACCOUNTS = "accounts";
+    public static final String TRANSACTIONS = "transactions";
+    public static final String LAST_ACCOUNT_ID = "lastAccountId";
+    public static final String LAST_TRANSACTION_ID = "lastTransactionId";
+    public static final String EXPECTED = "expected";
+    public static final String CONSISTENT = "consistent";
+    public static final String DISCREPANCIES = "discrepancies";
+    public static final String DISCREPANCY_COUNT = "discrepancyCount";
 }
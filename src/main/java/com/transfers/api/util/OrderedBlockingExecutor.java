@@ -0,0 +1,130 @@
+package com.transfers.api.util;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs blocking work (disk I/O, large scans) off the event loop and delivers results back on the caller's context.
+ * <p>
+ * Tasks are routed by key to one of a fixed number of serial lanes, so tasks with the same key (e.g. an account id)
+ * run one at a time in submission order while different keys run in parallel. The lanes run on a bounded worker
+ * pool ({@code blocking.mode = worker}, the default) or on virtual threads ({@code blocking.mode = virtual}) when the
+ * JDK supports them.
+ * <p>
+ * Long bulk jobs (archiving, replication snapshots, verification) run on named dedicated lanes, each with a thread
+ * of its own, so they never sit in front of account work in a shared lane or hold a pool thread it needs.
+ */
+public class OrderedBlockingExecutor {
+
+    private final Context context;
+    private final String mode;
+    private final ExecutorService executor;
+    private final Lane[] lanes;
+    private final Map<String, Lane> dedicatedLanes = new ConcurrentHashMap<>();
+
+    public OrderedBlockingExecutor(Context context, JsonObject config) {
+        this.context = context;
+        this.mode = config.getString("blocking.mode", "worker");
+        this.executor = createExecutor(mode, config.getInteger("blocking.pool.size", Runtime.getRuntime().availableProcessors()), "blocking");
+        this.lanes = new Lane[config.getInteger("blocking.lanes", 64)];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new Lane(executor);
+        }
+    }
+
+    public <T> void execute(Object key, Callable<T> task, Handler<AsyncResult<T>> resultHandler) {
+        submit(lanes[Math.floorMod(key.hashCode(), lanes.length)], task, resultHandler);
+    }
+
+    /**
+     * Runs the task on the dedicated lane of the given name, created on first use.
+     */
+    public <T> void executeDedicated(String name, Callable<T> task, Handler<AsyncResult<T>> resultHandler) {
+        submit(dedicatedLanes.computeIfAbsent(name, lane -> new Lane(createExecutor(mode, 1, lane))), task, resultHandler);
+    }
+
+    private <T> void submit(Lane lane, Callable<T> task, Handler<AsyncResult<T>> resultHandler) {
+        lane.submit(() -> {
+            AsyncResult<T> result;
+            try {
+                result = Future.succeededFuture(task.call());
+            } catch (Exception e) {
+                result = Future.failedFuture(e);
+            }
+            AsyncResult<T> completed = result;
+            context.runOnContext(v -> resultHandler.handle(completed));
+        });
+    }
+
+    public void close() {
+        executor.shutdown();
+        dedicatedLanes.values().forEach(lane -> lane.executor.shutdown());
+    }
+
+    private static ExecutorService createExecutor(String mode, int poolSize, String name) {
+        if ("virtual".equals(mode)) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                // virtual threads need JDK 21+, fall back to the worker pool
+            }
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(poolSize, runnable -> {
+            Thread thread = new Thread(runnable, "repository-" + name + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Runs its tasks one after another on its executor.
+     */
+    private static class Lane {
+        private final ExecutorService executor;
+        private final Queue<Runnable> tasks = new ArrayDeque<>();
+        private boolean running;
+
+        private Lane(ExecutorService executor) {
+            this.executor = executor;
+        }
+
+        private synchronized void submit(Runnable task) {
+            tasks.add(task);
+            if (!running) {
+                running = true;
+                executor.execute(this::runNext);
+            }
+        }
+
+        /**
+         * Runs one task and yields the thread before the next one, so a busy lane does not starve the others.
+         */
+        private void runNext() {
+            next().run();
+            synchronized (this) {
+                if (tasks.isEmpty()) {
+                    running = false;
+                } else {
+                    executor.execute(this::runNext);
+                }
+            }
+        }
+
+        private synchronized Runnable next() {
+            return tasks.poll();
+        }
+    }
+}
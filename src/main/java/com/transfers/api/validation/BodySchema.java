@@ -0,0 +1,261 @@
+package com.transfers.api.validation;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.RoutingContext;
+import io.vertx.ext.web.api.validation.CustomValidator;
+import io.vertx.ext.web.api.validation.ValidationException;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JSON object body schema compiled once into plain field checks.
+ * <p>
+ * Covers the subset of JSON schema used by the request bodies (required, type, minLength, maxLength, minimum,
+ * integral numbers, bounded integer arrays) and reports the first violation with the same message the schema
+ * engine would give. Unlike a body schema on {@code HTTPRequestValidationHandler}, which re-parses the body into
+ * a Jackson tree and walks the schema for every request, the body is decoded once and shared through
+ * {@link #body(RoutingContext)} with the other validators and through {@link #parsedBody(RoutingContext)}
+ * with the route handler.
+ */
+public class BodySchema implements CustomValidator {
+
+    private static final String PARSED_BODY = "parsedBody";
+
+    private final List<String> required = new ArrayList<>();
+    private final List<Property> properties = new ArrayList<>();
+
+    public static BodySchema object() {
+        return new BodySchema();
+    }
+
+    public BodySchema required(String... names) {
+        for (String name : names) {
+            required.add(name);
+        }
+        return this;
+    }
+
+    public BodySchema string(String name, int minLength, int maxLength) {
+        properties.add(new StringProperty(name, minLength, maxLength));
+        return this;
+    }
+
+    /**
+     * A number no smaller than {@code minimum}; {@code integral} rejects fractions like {@code multipleOf: 1.0}.
+     */
+    public BodySchema number(String name, long minimum, boolean integral) {
+        properties.add(new NumberProperty(name, minimum, integral));
+        return this;
+    }
+
+    public BodySchema integerArray(String name, int minItems, int maxItems, long minimum) {
+        properties.add(new IntegerArrayProperty(name, minItems, maxItems, minimum));
+        return this;
+    }
+
+    @Override
+    public void validate(RoutingContext rc) throws ValidationException {
+        JsonObject body = body(rc);
+        for (String name : required) {
+            if (!body.containsKey(name)) {
+                throw new ValidationException("$." + name + ": is missing but it is required");
+            }
+        }
+        for (Property property : properties) {
+            if (body.containsKey(property.name)) {
+                property.validate(body.getValue(property.name));
+            }
+        }
+    }
+
+    /**
+     * The request body as a JSON object, decoded on first use and cached on the routing context. Like a body
+     * schema on {@code HTTPRequestValidationHandler}, a request that is not sent as JSON is rejected first.
+     */
+    public static JsonObject body(RoutingContext rc) throws ValidationException {
+        JsonObject body = rc.get(PARSED_BODY);
+        if (body == null) {
+            String contentType = rc.request().getHeader(HttpHeaders.CONTENT_TYPE);
+            if (contentType == null || !(contentType.contains("application/json") || contentType.contains("+json"))) {
+                throw ValidationException.ValidationExceptionFactory.generateWrongContentTypeExpected(contentType);
+            }
+            body = decode(rc.getBody());
+            rc.put(PARSED_BODY, body);
+        }
+        return body;
+    }
+
+    /**
+     * The body decoded by a schema earlier in the route.
+     */
+    public static JsonObject parsedBody(RoutingContext rc) {
+        return rc.get(PARSED_BODY);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static JsonObject decode(Buffer buffer) throws ValidationException {
+        if (buffer == null || buffer.length() == 0) {
+            throw new ValidationException("Json should not be null");
+        }
+        Object value;
+        try {
+            value = Json.decodeValue(buffer);
+        } catch (DecodeException e) {
+            throw ValidationException.ValidationExceptionFactory.generateNotParsableJsonBodyException(e.getMessage());
+        }
+        if (value instanceof JsonObject) {
+            return (JsonObject) value;
+        }
+        if (value instanceof Map) {
+            return new JsonObject((Map<String, Object>) value);
+        }
+        throw typeMismatch("$", value, "object");
+    }
+
+    private static String typeOf(Object value) {
+        if (value == null) {
+            return "null";
+        } else if (value instanceof String) {
+            return "string";
+        } else if (value instanceof Integer || value instanceof Long || value instanceof BigInteger) {
+            return "integer";
+        } else if (value instanceof Double || value instanceof Float || value instanceof BigDecimal) {
+            return "number";
+        } else if (value instanceof Boolean) {
+            return "boolean";
+        } else if (value instanceof JsonArray || value instanceof List) {
+            return "array";
+        }
+        return "object";
+    }
+
+    private static ValidationException typeMismatch(String path, Object value, String expected) {
+        return new ValidationException(path + ": " + typeOf(value) + " found, " + expected + " expected");
+    }
+
+    private abstract static class Property {
+        final String name;
+        final String path;
+
+        Property(String name) {
+            this.name = name;
+            this.path = "$." + name;
+        }
+
+        abstract void validate(Object value) throws ValidationException;
+    }
+
+    private static class StringProperty extends Property {
+        private final int minLength;
+        private final int maxLength;
+        private final String tooShort;
+        private final String tooLong;
+
+        StringProperty(String name, int minLength, int maxLength) {
+            super(name);
+            this.minLength = minLength;
+            this.maxLength = maxLength;
+            this.tooShort = path + ": must be at least " + minLength + " characters long";
+            this.tooLong = path + ": may only be " + maxLength + " characters long";
+        }
+
+        @Override
+        void validate(Object value) throws ValidationException {
+            if (!(value instanceof String)) {
+                throw typeMismatch(path, value, "string");
+            }
+            String string = (String) value;
+            int length = string.codePointCount(0, string.length());
+            if (length < minLength) {
+                throw new ValidationException(tooShort);
+            }
+            if (length > maxLength) {
+                throw new ValidationException(tooLong);
+            }
+        }
+    }
+
+    private static class NumberProperty extends Property {
+        private final long minimum;
+        private final boolean integral;
+        private final String belowMinimum;
+        private final String aboveMaximum;
+        private final String notIntegral;
+
+        NumberProperty(String name, long minimum, boolean integral) {
+            super(name);
+            this.minimum = minimum;
+            this.integral = integral;
+            this.belowMinimum = path + ": must have a minimum value of " + (double) minimum;
+            this.aboveMaximum = path + ": must have a maximum value of " + Long.MAX_VALUE;
+            this.notIntegral = path + ": must be multiple of 1.0";
+        }
+
+        @Override
+        void validate(Object value) throws ValidationException {
+            if (!(value instanceof Number)) {
+                throw typeMismatch(path, value, "number");
+            }
+            double number = ((Number) value).doubleValue();
+            if (number < minimum) {
+                throw new ValidationException(belowMinimum);
+            }
+            // values are read as longs, which would truncate a BigInteger or saturate a large double
+            if (value instanceof BigInteger || (value instanceof Double && number >= Long.MAX_VALUE)) {
+                throw new ValidationException(aboveMaximum);
+            }
+            if (integral && number != Math.rint(number)) {
+                throw new ValidationException(notIntegral);
+            }
+        }
+    }
+
+    private static class IntegerArrayProperty extends Property {
+        private final int minItems;
+        private final int maxItems;
+        private final long minimum;
+
+        IntegerArrayProperty(String name, int minItems, int maxItems, long minimum) {
+            super(name);
+            this.minItems = minItems;
+            this.maxItems = maxItems;
+            this.minimum = minimum;
+        }
+
+        @Override
+        void validate(Object value) throws ValidationException {
+            if (!(value instanceof JsonArray)) {
+                throw typeMismatch(path, value, "array");
+            }
+            JsonArray items = (JsonArray) value;
+            if (items.size() < minItems) {
+                throw new ValidationException(path + ": there must be a minimum of " + minItems + " items in the array");
+            }
+            if (items.size() > maxItems) {
+                throw new ValidationException(path + ": there must be a maximum of " + maxItems + " items in the array");
+            }
+            for (int i = 0; i < items.size(); i++) {
+                Object item = items.getValue(i);
+                if (!(item instanceof Integer || item instanceof Long || item instanceof BigInteger)) {
+                    throw typeMismatch(path + "[" + i + "]", item, "integer");
+                }
+                if (((Number) item).doubleValue() < minimum) {
+                    throw new ValidationException(path + "[" + i + "]: must have a minimum value of " + minimum);
+                }
+                if (item instanceof BigInteger) {
+                    // decoded as BigInteger only outside the long range
+                    throw new ValidationException(path + "[" + i + "]: must have a maximum value of " + Long.MAX_VALUE);
+                }
+            }
+        }
+    }
+}
@@ -8,13 +8,43 @@ import io.vertx.ext.web.api.validation.HTTPRequestValidationHandler;
 import io.vertx.ext.web.api.validation.ParameterType;
 import io.vertx.ext.web.api.validation.ValidationException;
 
+import java.math.BigInteger;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+
 import static com.transfers.api.util.Consts.*;
 
 public class Validation {
 
+    private static final String DATE_PATTERN = "^[0-9]{4}-[0-9]{2}-[0-9]{2}$";
+
+    private static final int MAX_STREAM_IDS = 1000;
+    // at most 18 digits, so every id fits in a long
+    private static final int MAX_STREAM_ID_DIGITS = 18;
+
+    // body schemas are compiled once and shared by every handler instance
+    private static final BodySchema NEW_ACCOUNT_SCHEMA = BodySchema.object()
+            .required(NAME)
+            .string(NAME, 2, Integer.MAX_VALUE);
+
+    private static final BodySchema BALANCE_SCHEMA = BodySchema.object()
+            .required(OPERATION, AMOUNT)
+            .number(AMOUNT, 1, true)
+            .string(OPERATION, 7, 8);
+
+    private static final BodySchema BALANCES_SCHEMA = BodySchema.object()
+            .required(IDS)
+            .integerArray(IDS, 1, 5000, 1);
+
+    private static final BodySchema TRANSFER_SCHEMA = BodySchema.object()
+            .required(SENDER_ACCOUNT_ID, RECEIVER_ACCOUNT_ID, AMOUNT)
+            .number(AMOUNT, 1, true)
+            .number(SENDER_ACCOUNT_ID, 1, false)
+            .number(RECEIVER_ACCOUNT_ID, 1, false);
+
     public static HTTPRequestValidationHandler newAccountValidationHandler() {
         return HTTPRequestValidationHandler.create()
-                .addJsonBodySchema("{\"type\":\"object\",\"properties\":{\"name\":{\"type\":\"string\",\"minLength\":2}},\"required\":[\"name\"]}");
+                .addCustomValidatorFunction(NEW_ACCOUNT_SCHEMA);
     }
 
     public static HTTPRequestValidationHandler getAccountValidationHandler() {
@@ -26,34 +56,120 @@ public class Validation {
         return HTTPRequestValidationHandler.create()
                 .addPathParam(ID, ParameterType.INT)
                 .addCustomValidatorFunction(new BalanceOperationValidator())
-                .addJsonBodySchema("{\"type\":\"object\",\"properties\":{\"operation\":{\"type\":\"string\",\"minLength\":7,\"maxLength\":8},\"amount\":{\"type\":\"number\",\"multipleOf\":1.0,\"minimum\":1}},\"required\":[\"operation\",\"amount\"]}");
+                .addCustomValidatorFunction(BALANCE_SCHEMA);
+    }
+
+    public static HTTPRequestValidationHandler balancesValidationHandler() {
+        return HTTPRequestValidationHandler.create()
+                .addCustomValidatorFunction(BALANCES_SCHEMA);
     }
 
     public static HTTPRequestValidationHandler transferValidationHandler() {
         return HTTPRequestValidationHandler.create()
                 .addCustomValidatorFunction(new TransferValidator())
-                .addJsonBodySchema("{\"type\":\"object\",\"properties\":{\"amount\":{\"type\":\"number\",\"multipleOf\":1.0,\"minimum\":1},\"senderAccountId\":{\"type\":\"number\",\"minimum\":1},\"receiverAccountId\":{\"type\":\"number\",\"minimum\":1}},\"required\":[\"senderAccountId\",\"receiverAccountId\",\"amount\"]}");
+                .addCustomValidatorFunction(TRANSFER_SCHEMA);
+    }
+
+    public static HTTPRequestValidationHandler balanceStreamValidationHandler() {
+        return HTTPRequestValidationHandler.create()
+                .addQueryParam(IDS, ParameterType.GENERIC_STRING, true)
+                .addCustomValidatorFunction(new StreamIdsValidator());
+    }
+
+    public static HTTPRequestValidationHandler summaryValidationHandler() {
+        return HTTPRequestValidationHandler.create()
+                .addPathParam(ID, ParameterType.INT)
+                .addQueryParamWithPattern(FROM, DATE_PATTERN, true)
+                .addQueryParamWithPattern(TO, DATE_PATTERN, true)
+                .addQueryParamWithPattern(GRANULARITY, "^(day|month)$", false)
+                .addCustomValidatorFunction(new SummaryPeriodValidator());
+    }
+
+    /**
+     * Amounts are long minor units; the schema compares numbers as doubles and cannot reject values just above Long.MAX_VALUE.
+     */
+    private static void validateAmountRange(JsonObject body) throws ValidationException {
+        Object amount = body.getValue(AMOUNT);
+        if (amount instanceof BigInteger || (amount instanceof Double && (Double) amount >= Long.MAX_VALUE)) {
+            throw new ValidationException("$.amount: must have a maximum value of " + Long.MAX_VALUE);
+        }
     }
 
     private static class BalanceOperationValidator implements CustomValidator {
         @Override
         public void validate(RoutingContext rc) throws ValidationException {
-            String operation = rc.getBodyAsJson().getString(OPERATION);
-            if (operation != null && !operation.equals(Operation.withdraw.name()) && !operation.equals(Operation.deposit.name())) {
+            JsonObject balanceOperationJsonObj = BodySchema.body(rc);
+            Object operation = balanceOperationJsonObj.getValue(OPERATION);
+            if (operation instanceof String && !operation.equals(Operation.withdraw.name()) && !operation.equals(Operation.deposit.name())) {
                 throw new ValidationException(String.format("Operation must be or '%s' or '%s'", Operation.deposit.name(), Operation.withdraw.name()));
             }
+            validateAmountRange(balanceOperationJsonObj);
         }
     }
 
     private static class TransferValidator implements CustomValidator {
         @Override
         public void validate(RoutingContext rc) throws ValidationException {
-            JsonObject transferJsonObj = rc.getBodyAsJson();
-            Long senderAccountId = transferJsonObj.getLong(SENDER_ACCOUNT_ID);
-            Long receiverAccountId = transferJsonObj.getLong(RECEIVER_ACCOUNT_ID);
-            if (senderAccountId != null && senderAccountId.equals(receiverAccountId)) {
+            JsonObject transferJsonObj = BodySchema.body(rc);
+            Object senderAccountId = transferJsonObj.getValue(SENDER_ACCOUNT_ID);
+            Object receiverAccountId = transferJsonObj.getValue(RECEIVER_ACCOUNT_ID);
+            // ids outside the long range are left to the schema, their longValue is truncated
+            if (senderAccountId instanceof Number && receiverAccountId instanceof Number
+                    && !(senderAccountId instanceof BigInteger) && !(receiverAccountId instanceof BigInteger)
+                    && ((Number) senderAccountId).longValue() == ((Number) receiverAccountId).longValue()) {
                 throw new ValidationException("Sender and receiver accounts must be different");
             }
+            validateAmountRange(transferJsonObj);
+        }
+    }
+
+    /**
+     * Scans the id list once instead of matching a repeated regex group, which recurses per id and can overflow
+     * the stack on a long list.
+     */
+    private static class StreamIdsValidator implements CustomValidator {
+        @Override
+        public void validate(RoutingContext rc) throws ValidationException {
+            String ids = rc.request().getParam(IDS);
+            if (ids == null) {
+                return;
+            }
+            int count = 1;
+            int digits = 0;
+            for (int i = 0; i < ids.length(); i++) {
+                char c = ids.charAt(i);
+                if (c == ',' && digits > 0) {
+                    count++;
+                    digits = 0;
+                } else if (c < '0' || c > '9' || (c == '0' && digits == 0) || ++digits > MAX_STREAM_ID_DIGITS) {
+                    throw invalidStreamIds();
+                }
+            }
+            if (digits == 0 || count > MAX_STREAM_IDS) {
+                throw invalidStreamIds();
+            }
+        }
+
+        private static ValidationException invalidStreamIds() {
+            return new ValidationException(String.format("'%s' must be up to %d comma separated account ids", IDS, MAX_STREAM_IDS));
+        }
+    }
+
+    private static class SummaryPeriodValidator implements CustomValidator {
+        @Override
+        public void validate(RoutingContext rc) throws ValidationException {
+            String from = rc.request().getParam(FROM);
+            String to = rc.request().getParam(TO);
+            if (from == null || to == null) {
+                return;
+            }
+            try {
+                if (LocalDate.parse(from).isAfter(LocalDate.parse(to))) {
+                    throw new ValidationException("'from' must not be after 'to'");
+                }
+            } catch (DateTimeParseException e) {
+                throw new ValidationException("Dates must be valid ISO dates (yyyy-MM-dd)");
+            }
         }
     }
 }
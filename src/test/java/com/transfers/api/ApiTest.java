@@ -1,11 +1,18 @@
 package com.transfers.api;
 
+import com.transfers.api.binary.BinaryProtocolVerticle;
+import com.transfers.api.ratelimit.RateLimiter;
+import com.transfers.api.util.OrderedBlockingExecutor;
 import io.reactivex.Single;
 import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpMethod;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.NetSocket;
+import io.vertx.core.parsetools.RecordParser;
 import io.vertx.ext.unit.Async;
 import io.vertx.ext.unit.TestContext;
 import io.vertx.ext.unit.junit.RunTestOnContext;
@@ -18,8 +25,29 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 @RunWith(VertxUnitRunner.class)
 public class ApiTest {
@@ -30,17 +58,16 @@ public class ApiTest {
     private Vertx vertx;
     private Integer port;
     private WebClient client;
+    private String deploymentId;
 
     @Before
     public void setUp(TestContext context) throws IOException {
         vertx = rule.vertx();
-        ServerSocket socket = new ServerSocket(0);
         client = WebClient.create(vertx);
-        port = socket.getLocalPort();
-        socket.close();
+        port = freePort();
         DeploymentOptions options = new DeploymentOptions()
                 .setConfig(new JsonObject().put("http.port", port));
-        vertx.deployVerticle(MainVerticle.class.getName(), options, context.asyncAssertSuccess());
+        vertx.deployVerticle(MainVerticle.class.getName(), options, context.asyncAssertSuccess(id -> deploymentId = id));
     }
 
     @After
@@ -81,6 +108,20 @@ public class ApiTest {
                 });
     }
 
+    @Test
+    public void testCreateAccountWrongContentType(TestContext context) {
+        final Async async = context.async();
+        Single.<HttpResponse<Buffer>>create(emitter -> client.post(port, "localhost", "/accounts")
+                .putHeader("content-type", "text/plain")
+                .sendBuffer(Buffer.buffer("{\"name\":\"acc1\"}"), asyncResponse -> emitter.onSuccess(asyncResponse.result())))
+                .subscribe(response -> {
+                    context.assertEquals(400, response.statusCode());
+                    context.assertEquals("Failure on /accounts, reason: Wrong Content-Type header. Actual: text/plain",
+                            response.bodyAsJsonObject().getString("error"));
+                    async.complete();
+                });
+    }
+
     @Test
     public void testCreateAccountValidationError2(TestContext context) {
         final Async async = context.async();
@@ -220,6 +261,58 @@ public class ApiTest {
                 });
     }
 
+    @Test
+    public void testDepositLargeAmount(TestContext context) {
+        final Async async = context.async();
+        JsonObject depositOperation = new JsonObject()
+                .put("operation", "deposit")
+                .put("amount", Long.MAX_VALUE);
+        createAccount()
+                .map(this::getEntityId)
+                .flatMap(accountId -> balanceOperation(accountId, depositOperation)
+                        .flatMap(response -> getBalance(accountId)))
+                .subscribe(response -> {
+                    context.assertEquals(200, response.statusCode());
+                    context.assertEquals(Long.MAX_VALUE, response.bodyAsJsonObject().getLong("data"));
+                    async.complete();
+                });
+    }
+
+    @Test
+    public void testDepositBalanceOverflow(TestContext context) {
+        final Async async = context.async();
+        JsonObject depositOperation = new JsonObject()
+                .put("operation", "deposit")
+                .put("amount", Long.MAX_VALUE);
+        createAccount()
+                .map(this::getEntityId)
+                .flatMap(accountId -> balanceOperation(accountId, depositOperation)
+                        .flatMap(response -> deposit(accountId, 1)))
+                .subscribe(response -> {
+                    JsonObject responseBody = response.bodyAsJsonObject();
+                    context.assertEquals(422, response.statusCode());
+                    context.assertEquals("Failure on /accounts/1/balance, reason: Balance overflow", responseBody.getString("error"));
+                    async.complete();
+                });
+    }
+
+    @Test
+    public void testDepositValidationAmountTooLarge(TestContext context) {
+        final Async async = context.async();
+        createAccount()
+                .map(this::getEntityId)
+                .flatMap(accountId -> Single.<HttpResponse<Buffer>>create(emitter -> client.post(port, "localhost", String.format("/accounts/%s/balance", accountId))
+                        .putHeader("content-type", "application/json")
+                        .sendBuffer(Buffer.buffer("{\"operation\":\"deposit\",\"amount\":9223372036854775808}"),
+                                asyncResponse -> emitter.onSuccess(asyncResponse.result()))))
+                .subscribe(response -> {
+                    JsonObject responseBody = response.bodyAsJsonObject();
+                    context.assertEquals(400, response.statusCode());
+                    context.assertEquals("Failure on /accounts/1/balance, reason: $.amount: must have a maximum value of 9223372036854775807", responseBody.getString("error"));
+                    async.complete();
+                });
+    }
+
     @Test
     public void testTransferSunny(TestContext context) {
         final Async async = context.async();
@@ -300,6 +393,50 @@ public class ApiTest {
                 });
     }
 
+    @Test
+    public void testTransferValidationWrongTypes(TestContext context) {
+        final Async async = context.async();
+        JsonObject transfer = new JsonObject()
+                .put("senderAccountId", "1")
+                .put("receiverAccountId", 2)
+                .put("amount", 500);
+        transfer(transfer)
+                .doOnSuccess(response -> {
+                    context.assertEquals(400, response.statusCode());
+                    context.assertEquals("Failure on /transfers, reason: $.senderAccountId: string found, number expected", response.bodyAsJsonObject().getString("error"));
+                })
+                .flatMap(resp -> send(HttpMethod.POST, port, "/accounts", null))
+                .subscribe(response -> {
+                    context.assertEquals(400, response.statusCode());
+                    context.assertEquals("Failure on /accounts, reason: $: null found, object expected", response.bodyAsJsonObject().getString("error"));
+                    async.complete();
+                });
+    }
+
+    @Test
+    public void testTransferValidationIdOutOfRange(TestContext context) {
+        final Async async = context.async();
+        Single.<HttpResponse<Buffer>>create(emitter -> client.post(port, "localhost", "/transfers")
+                .putHeader("content-type", "application/json")
+                .sendBuffer(Buffer.buffer("{\"senderAccountId\":18446744073709551617,\"receiverAccountId\":1,\"amount\":500}"),
+                        asyncResponse -> emitter.onSuccess(asyncResponse.result())))
+                .doOnSuccess(response -> {
+                    context.assertEquals(400, response.statusCode());
+                    context.assertEquals("Failure on /transfers, reason: $.senderAccountId: must have a maximum value of 9223372036854775807",
+                            response.bodyAsJsonObject().getString("error"));
+                })
+                .flatMap(response -> Single.<HttpResponse<Buffer>>create(emitter -> client.post(port, "localhost", "/transfers")
+                        .putHeader("content-type", "application/json")
+                        .sendBuffer(Buffer.buffer("{\"senderAccountId\":1,\"receiverAccountId\":9223372036854775808,\"amount\":500}"),
+                                asyncResponse -> emitter.onSuccess(asyncResponse.result()))))
+                .subscribe(response -> {
+                    context.assertEquals(400, response.statusCode());
+                    context.assertEquals("Failure on /transfers, reason: $.receiverAccountId: must have a maximum value of 9223372036854775807",
+                            response.bodyAsJsonObject().getString("error"));
+                    async.complete();
+                });
+    }
+
     @Test
     public void testTransferSameAccounts(TestContext context) {
         final Async async = context.async();
@@ -351,6 +488,48 @@ public class ApiTest {
                 });
     }
 
+    @Test
+    public void testVelocityLimitExceeded(TestContext context) {
+        final Async async = context.async();
+        JsonObject config = new JsonObject()
+                .put("velocity.rules", new JsonArray()
+                        .add(new JsonObject().put("window.seconds", 3600).put("max.amount", 1000).put("max.count", 2)));
+        redeploy(config)
+                .flatMap(deployed -> createAccount())
+                .map(this::getEntityId)
+                .flatMap(accountId1 -> createAccount()
+                        .map(this::getEntityId)
+                        .flatMap(accountId2 -> deposit(accountId1, 10000)
+                                .flatMap(resp -> withdraw(accountId1, 300))
+                                .doOnSuccess(response -> context.assertEquals(200, response.statusCode()))
+                                .flatMap(resp -> transfer(accountId1, accountId2, 800))
+                                .doOnSuccess(response -> {
+                                    context.assertEquals(403, response.statusCode());
+                                    context.assertEquals("Failure on /transfers, reason: Velocity limit exceeded", response.bodyAsJsonObject().getString("error"));
+                                })
+                                .flatMap(resp -> transfer(accountId1, accountId2, 700))
+                                .doOnSuccess(response -> context.assertEquals(200, response.statusCode()))
+                                .flatMap(resp -> deposit(accountId1, 100))
+                                .doOnSuccess(response -> context.assertEquals(200, response.statusCode()))
+                                .flatMap(resp -> withdraw(accountId1, 1))))
+                .subscribe(response -> {
+                    context.assertEquals(403, response.statusCode());
+                    context.assertEquals("Failure on /accounts/1/balance, reason: Velocity limit exceeded", response.bodyAsJsonObject().getString("error"));
+                    async.complete();
+                });
+    }
+
+    @Test
+    public void testVelocityRuleWithoutWindowRejected(TestContext context) {
+        DeploymentOptions options = new DeploymentOptions()
+                .setConfig(new JsonObject()
+                        .put("http.port", port)
+                        .put("velocity.rules", new JsonArray().add(new JsonObject().put("max.count", 10))));
+        vertx.undeploy(deploymentId, context.asyncAssertSuccess(undeployed ->
+                vertx.deployVerticle(MainVerticle.class.getName(), options, context.asyncAssertFailure(cause ->
+                        context.assertEquals("velocity.rules[0]: window.seconds must be a positive number of seconds", cause.getMessage())))));
+    }
+
     @Test
     public void testGetAccountSunny(TestContext context) {
         final Async async = context.async();
@@ -497,6 +676,685 @@ public class ApiTest {
                 });
     }
 
+    @Test
+    public void testGetBalancesSunny(TestContext context) {
+        final Async async = context.async();
+        createAccount()
+                .map(this::getEntityId)
+                .flatMap(accountId1 -> createAccount()
+                        .map(this::getEntityId)
+                        .flatMap(accountId2 -> deposit(accountId1, 1000)
+                                .flatMap(resp -> balances(new JsonArray().add(accountId1).add(accountId2).add(3L)))))
+                .subscribe(response -> {
+                    JsonObject data = response.bodyAsJsonObject().getJsonObject("data");
+                    context.assertEquals(200, response.statusCode());
+                    context.assertEquals(1000, data.getJsonObject("balances").getInteger("1"));
+                    context.assertEquals(0, data.getJsonObject("balances").getInteger("2"));
+                    context.assertEquals(new JsonArray().add(3), data.getJsonArray("notFound"));
+                    async.complete();
+                });
+    }
+
+    @Test
+    public void testGetBalancesValidationIdsRequired(TestContext context) {
+        final Async async = context.async();
+        balances(new JsonArray())
+                .subscribe(response -> {
+                    context.assertEquals(400, response.statusCode());
+                    async.complete();
+                });
+    }
+
+    @Test
+    public void testGetBalancesValidationIdOutOfRange(TestContext context) {
+        final Async async = context.async();
+        Single.<HttpResponse<Buffer>>create(emitter -> client.post(port, "localhost", "/accounts/balances")
+                .putHeader("content-type", "application/json")
+                .sendBuffer(Buffer.buffer("{\"ids\":[1,9223372036854775808]}"), asyncResponse -> emitter.onSuccess(asyncResponse.result())))
+                .subscribe(response -> {
+                    context.assertEquals(400, response.statusCode());
+                    context.assertEquals("Failure on /accounts/balances, reason: $.ids[1]: must have a maximum value of 9223372036854775807",
+                            response.bodyAsJsonObject().getString("error"));
+                    async.complete();
+                });
+    }
+
+    @Test
+    public void testGetSummarySunny(TestContext context) {
+        final Async async = context.async();
+        String today = LocalDate.now(ZoneOffset.UTC).toString();
+        createAccount()
+                .map(this::getEntityId)
+                .flatMap(accountId1 -> createAccount()
+                        .map(this::getEntityId)
+                        .flatMap(accountId2 -> deposit(accountId1, 1000)
+                                .flatMap(resp -> transfer(accountId1, accountId2, 300))
+                                .flatMap(resp -> withdraw(accountId1, 200))
+                                .flatMap(resp -> summary(accountId1, String.format("from=%s&to=%s", today, today)))))
+                .subscribe(response -> {
+                    JsonObject summary = response.bodyAsJsonObject().getJsonObject("data");
+                    context.assertEquals(200, response.statusCode());
+                    context.assertEquals(1000, summary.getInteger("credit"));
+                    context.assertEquals(500, summary.getInteger("debit"));
+                    context.assertEquals(1, summary.getInteger("creditCount"));
+                    context.assertEquals(2, summary.getInteger("debitCount"));
+                    context.assertEquals(today, summary.getJsonArray("periods").getJsonObject(0).getString("period"));
+                    async.complete();
+                });
+    }
+
+    @Test
+    public void testGetSummaryByMonth(TestContext context) {
+        final Async async = context.async();
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        createAccount()
+                .map(this::getEntityId)
+                .flatMap(accountId -> deposit(accountId, 1000)
+                        .flatMap(resp -> summary(accountId, String.format("from=%s&to=%s&granularity=month", today.minusMonths(1), today))))
+                .subscribe(response -> {
+                    JsonArray periods = response.bodyAsJsonObject().getJsonObject("data").getJsonArray("periods");
+                    context.assertEquals(200, response.statusCode());
+                    context.assertEquals(1, periods.size());
+                    context.assertEquals(YearMonth.from(today).toString(), periods.getJsonObject(0).getString("period"));
+                    context.assertEquals(1000, periods.getJsonObject(0).getInteger("credit"));
+                    async.complete();
+                });
+    }
+
+    @Test
+    public void testGetSummaryValidationPeriod(TestContext context) {
+        final Async async = context.async();
+        createAccount()
+                .map(this::getEntityId)
+                .flatMap(accountId -> summary(accountId, "from=2020-02-01&to=2020-01-01"))
+                .subscribe(response -> {
+                    JsonObject responseBody = response.bodyAsJsonObject();
+                    context.assertEquals(400, response.statusCode());
+                    context.assertEquals("Failure on /accounts/1/summary, reason: 'from' must not be after 'to'", responseBody.getString("error"));
+                    async.complete();
+                });
+    }
+
+    @Test
+    public void testGetTransactionsVirtualThreadMode(TestContext context) {
+        final Async async = context.async();
+        redeploy(new JsonObject().put("blocking.mode", "virtual"))
+                .flatMap(deployed -> createAccount())
+                .map(this::getEntityId)
+                .flatMap(accountId -> deposit(accountId, 1000)
+                        .flatMap(response -> transactions(accountId)))
+                .subscribe(response -> {
+                    JsonArray transactionsJsonArr = response.bodyAsJsonObject().getJsonArray("data");
+                    context.assertEquals(200, response.statusCode());
+                    context.assertEquals(1, transactionsJsonArr.size());
+                    context.assertEquals(1000, transactionsJsonArr.getJsonObject(0).getInteger("amount"));
+                    async.complete();
+                });
+    }
+
+    @Test
+    public void testBlockingExecutorModes(TestContext context) {
+        boolean virtualThreadsSupported = Arrays.stream(Executors.class.getMethods())
+                .anyMatch(method -> method.getName().equals("newVirtualThreadPerTaskExecutor"));
+        OrderedBlockingExecutor worker = new OrderedBlockingExecutor(vertx.getOrCreateContext(), new JsonObject());
+        OrderedBlockingExecutor virtual = new OrderedBlockingExecutor(vertx.getOrCreateContext(), new JsonObject().put("blocking.mode", "virtual"));
+        worker.execute(1L, () -> Thread.currentThread().getName(), context.asyncAssertSuccess(threadName -> {
+            context.assertTrue(threadName.startsWith("repository-blocking-"));
+            worker.close();
+        }));
+        virtual.execute(1L, () -> Thread.currentThread().getName(), context.asyncAssertSuccess(threadName -> {
+            // virtual threads are unnamed, older JDKs fall back to the named worker pool
+            context.assertEquals(!virtualThreadsSupported, threadName.startsWith("repository-blocking-"));
+            virtual.close();
+        }));
+    }
+
+    @Test
+    public void testBlockingExecutorDedicatedLane(TestContext context) {
+        final Async async = context.async();
+        OrderedBlockingExecutor executor = new OrderedBlockingExecutor(vertx.getOrCreateContext(), new JsonObject().put("blocking.pool.size", 1));
+        CountDownLatch release = new CountDownLatch(1);
+        executor.executeDedicated("bulk", () -> {
+            release.await();
+            return Thread.currentThread().getName();
+        }, context.asyncAssertSuccess(threadName -> {
+            context.assertTrue(threadName.startsWith("repository-bulk-"));
+            executor.close();
+            async.complete();
+        }));
+        // account work is not held up by a running bulk job, even with a single pool thread
+        executor.execute(1L, () -> null, context.asyncAssertSuccess(done -> release.countDown()));
+    }
+
+    @Test
+    public void testGetTransactionsFromArchive(TestContext context) throws IOException {
+        final Async async = context.async();
+        Path archiveDir = Files.createTempDirectory("archive");
+        JsonObject config = new JsonObject()
+                .put("archive.enabled", true)
+                .put("archive.dir", archiveDir.toString())
+                .put("archive.age.seconds", 0)
+                .put("archive.interval.ms", 50);
+        redeploy(config)
+                .flatMap(deployed -> createAccount())
+                .map(this::getEntityId)
+                .flatMap(accountId -> deposit(accountId, 1000)
+                        .flatMap(response -> withdraw(accountId, 200))
+                        .flatMap(response -> delay(500))
+                        .flatMap(response -> transactions(accountId)))
+                .subscribe(response -> {
+                    JsonArray transactionsJsonArr = response.bodyAsJsonObject().getJsonArray("data");
+                    context.assertEquals(200, response.statusCode());
+                    context.assertEquals(2, transactionsJsonArr.size());
+                    context.assertEquals(-200, transactionsJsonArr.getJsonObject(0).getInteger("amount"));
+                    context.assertEquals(1000, transactionsJsonArr.getJsonObject(1).getInteger("amount"));
+                    context.assertTrue(archiveDir.toFile().list().length > 0);
+                    async.complete();
+                });
+    }
+
+    @Test
+    public void testTransferTraced(TestContext context) throws IOException {
+        final Async async = context.async();
+        Path traceFile = Files.createTempFile("spans", ".json");
+        String traceId = "4bf92f3577b34da6a3ce929d0e0e4736";
+        JsonObject config = new JsonObject()
+                .put("tracing.sample.rate", 0.0)
+                .put("tracing.file", traceFile.toString())
+                .put("tracing.flush.interval.ms", 50);
+        redeploy(config)
+                .flatMap(deployed -> createAccount())
+                .map(this::getEntityId)
+                .flatMap(accountId1 -> createAccount()
+                        .map(this::getEntityId)
+                        .flatMap(accountId2 -> deposit(accountId1, 1000)
+                                .flatMap(resp -> Single.<HttpResponse<Buffer>>create(emitter -> client.post(port, "localhost", "/transfers")
+                                        .putHeader("traceparent", "00-" + traceId + "-00f067aa0ba902b7-01")
+                                        .sendJsonObject(new JsonObject()
+                                                .put("senderAccountId", accountId1)
+                                                .put("receiverAccountId", accountId2)
+                                                .put("amount", 500), asyncResponse -> emitter.onSuccess(asyncResponse.result()))))))
+                .doOnSuccess(response -> context.assertEquals(200, response.statusCode()))
+                .flatMap(response -> delay(300))
+                .subscribe(delayed -> {
+                    Map<String, JsonObject> spans = new HashMap<>();
+                    for (String line : Files.readAllLines(traceFile)) {
+                        JsonObject span = new JsonObject(line);
+                        context.assertEquals(traceId, span.getString("traceId"));
+                        spans.put(span.getString("name"), span);
+                    }
+                    JsonObject root = spans.get("POST /transfers");
+                    context.assertEquals("00f067aa0ba902b7", root.getString("parentId"));
+                    context.assertEquals("200", root.getJsonObject("tags").getString("http.status_code"));
+                    for (String stage : new String[]{"validation", "request new-transfer", "response"}) {
+                        context.assertEquals(root.getString("id"), spans.get(stage).getString("parentId"));
+                    }
+                    JsonObject repository = spans.get("repository new-transfer");
+                    context.assertEquals(root.getString("id"), repository.getString("parentId"));
+                    context.assertEquals(repository.getString("id"), spans.get("queue new-transfer").getString("parentId"));
+                    context.assertEquals(repository.getString("id"), spans.get("transaction counter").getString("parentId"));
+                    async.complete();
+                });
+    }
+
+    @Test
+    public void testLedgerVerification(TestContext context) throws IOException {
+        final Async async = context.async();
+        JsonObject config = new JsonObject()
+                .put("archive.enabled", true)
+                .put("archive.dir", Files.createTempDirectory("archive").toString())
+                .put("archive.age.seconds", 0)
+                .put("archive.interval.ms", 50);
+        redeploy(config)
+                .flatMap(deployed -> createAccount())
+                .map(this::getEntityId)
+                .flatMap(accountId1 -> createAccount()
+                        .map(this::getEntityId)
+                        .flatMap(accountId2 -> deposit(accountId1, 1000)
+                                .flatMap(resp -> transfer(accountId1, accountId2, 300))
+                                .flatMap(resp -> delay(300))
+                                .flatMap(resp -> withdraw(accountId2, 100))))
+                .flatMap(resp -> send(HttpMethod.GET, port, "/ledger/verification", null))
+                .subscribe(response -> {
+                    JsonObject report = response.bodyAsJsonObject().getJsonObject("data");
+                    context.assertEquals(200, response.statusCode());
+                    context.assertTrue(report.getBoolean("consistent"));
+                    context.assertEquals(2, report.getInteger("accounts"));
+                    context.assertEquals(3, report.getInteger("transactions"));
+                    context.assertEquals(3, report.getInteger("lastTransactionId"));
+                    context.assertEquals(0, report.getJsonArray("discrepancies").size());
+                    async.complete();
+                });
+    }
+
+    @Test
+    public void testLedgerVerificationInMemory(TestContext context) {
+        final Async async = context.async();
+        createAccount()
+                .map(this::getEntityId)
+                .flatMap(accountId1 -> createAccount()
+                        .map(this::getEntityId)
+                        .flatMap(accountId2 -> deposit(accountId1, 1000)
+                                .flatMap(resp -> transfer(accountId1, accountId2, 300))
+                                .flatMap(resp -> withdraw(accountId2, 100))))
+                .flatMap(resp -> send(HttpMethod.GET, port, "/ledger/verification", null))
+                .subscribe(response -> {
+                    JsonObject report = response.bodyAsJsonObject().getJsonObject("data");
+                    context.assertEquals(200, response.statusCode());
+                    context.assertTrue(report.getBoolean("consistent"));
+                    context.assertEquals(3, report.getInteger("transactions"));
+                    async.complete();
+                });
+    }
+
+    @Test
+    public void testLedgerVerificationDiscrepancy(TestContext context) throws IOException {
+        final Async async = context.async();
+        Path archiveDir = Files.createTempDirectory("archive");
+        JsonObject config = new JsonObject()
+                .put("archive.enabled", true)
+                .put("archive.dir", archiveDir.toString())
+                .put("archive.age.seconds", 0)
+                .put("archive.interval.ms", 50);
+        redeploy(config)
+                .flatMap(deployed -> createAccount())
+                .map(this::getEntityId)
+                .flatMap(accountId -> deposit(accountId, 1000))
+                .flatMap(resp -> delay(500))
+                .map(resp -> {
+                    // the archived transaction no longer adds up to the balance
+                    try (DirectoryStream<Path> segments = Files.newDirectoryStream(archiveDir, "segment-*.json.gz")) {
+                        for (Path segment : segments) {
+                            List<String> rows;
+                            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                                    new GZIPInputStream(Files.newInputStream(segment)), StandardCharsets.UTF_8))) {
+                                rows = reader.lines().collect(Collectors.toList());
+                            }
+                            try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(segment)), StandardCharsets.UTF_8)) {
+                                for (String row : rows) {
+                                    writer.write(row.replace("\"amount\":1000", "\"amount\":900") + "\n");
+                                }
+                            }
+                        }
+                    }
+                    return resp;
+                })
+                .flatMap(resp -> send(HttpMethod.GET, port, "/ledger/verification", null))
+                .subscribe(response -> {
+                    JsonObject report = response.bodyAsJsonObject().getJsonObject("data");
+                    context.assertEquals(200, response.statusCode());
+                    context.assertFalse(report.getBoolean("consistent"));
+                    context.assertEquals(1, report.getInteger("discrepancyCount"));
+                    context.assertEquals(new JsonArray().add(new JsonObject()
+                            .put("accountId", 1)
+                            .put("balance", 1000)
+                            .put("expected", 900)), report.getJsonArray("discrepancies"));
+                    async.complete();
+                });
+    }
+
+    @Test
+    public void testBinaryProtocolPipelined(TestContext context) throws IOException {
+        final Async async = context.async();
+        Integer binaryPort = freePort();
+        Map<Long, Buffer> responses = new HashMap<>();
+        redeploy(new JsonObject().put("binary.port", binaryPort))
+                .flatMap(deployed -> createAccount())
+                .map(this::getEntityId)
+                .subscribe(accountId -> vertx.createNetClient().connect(binaryPort, "localhost", connected -> {
+                    NetSocket socket = connected.result();
+                    RecordParser parser = RecordParser.newFixed(4);
+                    parser.handler(new Handler<Buffer>() {
+                        private boolean expectingLength = true;
+
+                        @Override
+                        public void handle(Buffer record) {
+                            if (expectingLength) {
+                                parser.fixedSizeMode(record.getInt(0));
+                            } else {
+                                responses.put(record.getLong(0), record);
+                                parser.fixedSizeMode(4);
+                            }
+                            expectingLength = !expectingLength;
+                            if (responses.size() == 2) {
+                                context.assertEquals((short) 200, responses.get(7L).getShort(8));
+                                context.assertEquals(1L, responses.get(7L).getLong(10));
+                                context.assertEquals((short) 404, responses.get(8L).getShort(8));
+                                context.assertEquals("Account not found", responses.get(8L).getString(18, responses.get(8L).length()));
+                                async.complete();
+                            }
+                        }
+                    });
+                    socket.handler(parser);
+                    socket.write(Buffer.buffer()
+                            .appendInt(25).appendByte(BinaryProtocolVerticle.DEPOSIT).appendLong(7L)
+                            .appendLong(accountId).appendLong(1000L)
+                            .appendInt(17).appendByte(BinaryProtocolVerticle.BALANCE_QUERY).appendLong(8L)
+                            .appendLong(99L));
+                }));
+    }
+
+    @Test
+    public void testConcurrentDepositsOverflow(TestContext context) throws IOException {
+        final Async async = context.async();
+        Integer binaryPort = freePort();
+        Map<Long, Buffer> responses = new HashMap<>();
+        long amount = Long.MAX_VALUE / 2 + 1;
+        redeploy(new JsonObject().put("binary.port", binaryPort))
+                .flatMap(deployed -> createAccount())
+                .map(this::getEntityId)
+                .subscribe(accountId -> vertx.createNetClient().connect(binaryPort, "localhost", connected -> {
+                    NetSocket socket = connected.result();
+                    RecordParser parser = RecordParser.newFixed(4);
+                    parser.handler(new Handler<Buffer>() {
+                        private boolean expectingLength = true;
+
+                        @Override
+                        public void handle(Buffer record) {
+                            if (expectingLength) {
+                                parser.fixedSizeMode(record.getInt(0));
+                            } else {
+                                responses.put(record.getLong(0), record);
+                                parser.fixedSizeMode(4);
+                            }
+                            expectingLength = !expectingLength;
+                            if (responses.size() == 2) {
+                                // both deposits pass validation before either gets its transaction id
+                                context.assertEquals((short) 200, responses.get(1L).getShort(8));
+                                context.assertEquals((short) 422, responses.get(2L).getShort(8));
+                                context.assertEquals("Balance overflow", responses.get(2L).getString(18, responses.get(2L).length()));
+                                async.complete();
+                            }
+                        }
+                    });
+                    socket.handler(parser);
+                    socket.write(Buffer.buffer()
+                            .appendInt(25).appendByte(BinaryProtocolVerticle.DEPOSIT).appendLong(1L)
+                            .appendLong(accountId).appendLong(amount)
+                            .appendInt(25).appendByte(BinaryProtocolVerticle.DEPOSIT).appendLong(2L)
+                            .appendLong(accountId).appendLong(amount));
+                }));
+    }
+
+    @Test
+    public void testReplicationFollowerServesReadsAndPromotes(TestContext context) throws IOException {
+        final Async async = context.async();
+        Integer replicationPort = freePort();
+        Integer followerPort = freePort();
+        Vertx followerVertx = Vertx.vertx();
+        JsonObject leaderConfig = new JsonObject()
+                .put("replication.role", "leader")
+                .put("replication.port", replicationPort)
+                .put("replication.heartbeat.ms", 100);
+        DeploymentOptions followerOptions = new DeploymentOptions()
+                .setConfig(new JsonObject()
+                        .put("http.port", followerPort)
+                        .put("replication.role", "follower")
+                        .put("replication.leader.port", replicationPort));
+        redeploy(leaderConfig)
+                .flatMap(deployed -> createAccount())
+                .map(this::getEntityId)
+                .flatMap(accountId -> deposit(accountId, 1000)
+                        .flatMap(response -> Single.<String>create(emitter -> followerVertx.deployVerticle(MainVerticle.class.getName(),
+                                followerOptions, deployed -> emitter.onSuccess(deployed.result()))))
+                        .flatMap(deployed -> delay(300))
+                        .flatMap(response -> withdraw(accountId, 200))
+                        .flatMap(response -> delay(300))
+                        .flatMap(response -> send(HttpMethod.GET, followerPort, String.format("/accounts/%s/balance", accountId), null))
+                        .doOnSuccess(response -> {
+                            context.assertEquals(200, response.statusCode());
+                            context.assertEquals(800, response.bodyAsJsonObject().getInteger("data"));
+                        })
+                        .flatMap(response -> send(HttpMethod.GET, followerPort, String.format("/accounts/%s/transactions", accountId), null))
+                        .doOnSuccess(response -> context.assertEquals(2, response.bodyAsJsonObject().getJsonArray("data").size()))
+                        .flatMap(response -> send(HttpMethod.POST, followerPort, "/accounts", new JsonObject().put("name", "acc2")))
+                        .doOnSuccess(response -> {
+                            context.assertEquals(503, response.statusCode());
+                            context.assertEquals("Failure on /accounts, reason: Read-only replica", response.bodyAsJsonObject().getString("error"));
+                        })
+                        .flatMap(response -> send(HttpMethod.POST, followerPort, "/replication/promote", new JsonObject()))
+                        .doOnSuccess(response -> context.assertEquals(200, response.statusCode()))
+                        .flatMap(response -> send(HttpMethod.POST, followerPort, "/accounts", new JsonObject().put("name", "acc2"))))
+                .subscribe(response -> {
+                    context.assertEquals(201, response.statusCode());
+                    context.assertEquals(2, response.bodyAsJsonObject().getInteger("data"));
+                    followerVertx.close(context.asyncAssertSuccess(closed -> async.complete()));
+                });
+    }
+
+    @Test
+    public void testReplicationFollowerRestoresLargeSnapshot(TestContext context) throws IOException {
+        final Async async = context.async();
+        Integer replicationPort = freePort();
+        Integer followerPort = freePort();
+        Vertx followerVertx = Vertx.vertx();
+        char[] name = new char[300_000];
+        Arrays.fill(name, 'a');
+        DeploymentOptions followerOptions = new DeploymentOptions()
+                .setConfig(new JsonObject()
+                        .put("http.port", followerPort)
+                        .put("replication.role", "follower")
+                        .put("replication.leader.port", replicationPort));
+        redeploy(new JsonObject().put("replication.role", "leader").put("replication.port", replicationPort))
+                .flatMap(deployed -> createAccount(new JsonObject().put("name", new String(name))))
+                .map(this::getEntityId)
+                .flatMap(accountId -> deposit(accountId, 1000)
+                        .flatMap(response -> Single.<String>create(emitter -> followerVertx.deployVerticle(MainVerticle.class.getName(),
+                                followerOptions, deployed -> emitter.onSuccess(deployed.result()))))
+                        .flatMap(deployed -> delay(500))
+                        .flatMap(response -> send(HttpMethod.GET, followerPort, String.format("/accounts/%s", accountId), null)))
+                .subscribe(response -> {
+                    context.assertEquals(200, response.statusCode());
+                    context.assertEquals(name.length, response.bodyAsJsonObject().getJsonObject("data").getString("name").length());
+                    context.assertEquals(1000, response.bodyAsJsonObject().getJsonObject("data").getInteger("balance"));
+                    followerVertx.close(context.asyncAssertSuccess(closed -> async.complete()));
+                });
+    }
+
+    @Test
+    public void testReplicationFollowerRejectsBinaryWrites(TestContext context) throws IOException {
+        final Async async = context.async();
+        Integer binaryPort = freePort();
+        JsonObject followerConfig = new JsonObject()
+                .put("binary.port", binaryPort)
+                .put("replication.role", "follower")
+                .put("replication.leader.port", freePort());
+        redeploy(followerConfig)
+                .subscribe(deployed -> vertx.createNetClient().connect(binaryPort, "localhost", connected -> {
+                    NetSocket socket = connected.result();
+                    RecordParser parser = RecordParser.newFixed(4);
+                    parser.handler(new Handler<Buffer>() {
+                        private boolean expectingLength = true;
+
+                        @Override
+                        public void handle(Buffer record) {
+                            if (expectingLength) {
+                                parser.fixedSizeMode(record.getInt(0));
+                            } else {
+                                context.assertEquals(3L, record.getLong(0));
+                                context.assertEquals((short) 503, record.getShort(8));
+                                context.assertEquals("Read-only replica", record.getString(18, record.length()));
+                                async.complete();
+                            }
+                            expectingLength = !expectingLength;
+                        }
+                    });
+                    socket.handler(parser);
+                    socket.write(Buffer.buffer()
+                            .appendInt(25).appendByte(BinaryProtocolVerticle.DEPOSIT).appendLong(3L)
+                            .appendLong(1L).appendLong(1000L));
+                }));
+    }
+
+    @Test
+    public void testArchiveWithReplicationRejected(TestContext context) {
+        DeploymentOptions options = new DeploymentOptions()
+                .setConfig(new JsonObject()
+                        .put("http.port", port)
+                        .put("archive.enabled", true)
+                        .put("replication.role", "leader")
+                        .put("replication.port", port));
+        vertx.undeploy(deploymentId, context.asyncAssertSuccess(undeployed ->
+                vertx.deployVerticle(MainVerticle.class.getName(), options, context.asyncAssertFailure(cause ->
+                        context.assertEquals("archive.enabled cannot be combined with replication.role", cause.getMessage())))));
+    }
+
+    @Test
+    public void testRateLimitPerClient(TestContext context) {
+        final Async async = context.async();
+        JsonObject config = new JsonObject()
+                .put("rate.limits", new JsonObject()
+                        .put("POST /accounts", new JsonObject()
+                                .put("capacity", 2)
+                                .put("refill.per.second", 0.01)))
+                .put("rate.limit.api.keys", new JsonArray().add("another-client"));
+        redeploy(config)
+                .flatMap(deployed -> createAccount())
+                .flatMap(response -> createAccount())
+                .doOnSuccess(response -> context.assertEquals(201, response.statusCode()))
+                .flatMap(response -> createAccount())
+                .doOnSuccess(response -> {
+                    context.assertEquals(429, response.statusCode());
+                    context.assertNotNull(response.getHeader("retry-after"));
+                    context.assertEquals("Failure on /accounts, reason: Too many requests", response.bodyAsJsonObject().getString("error"));
+                })
+                .flatMap(response -> createAccountWithApiKey("unknown-client"))
+                .doOnSuccess(response -> context.assertEquals(429, response.statusCode()))
+                .flatMap(response -> createAccountWithApiKey("another-client"))
+                .subscribe(response -> {
+                    context.assertEquals(201, response.statusCode());
+                    async.complete();
+                });
+    }
+
+    @Test
+    public void testRateLimiterKeepsBucketsWhenFull(TestContext context) {
+        RateLimiter rateLimiter = new RateLimiter(5, 1, 1);
+        long now = System.nanoTime();
+        context.assertEquals(0L, rateLimiter.tryAcquire("client", now));
+        boolean denied = false;
+        for (int i = 0; i < 1000; i++) {
+            denied |= rateLimiter.tryAcquire("new-client-" + i, now) > 0;
+        }
+        context.assertTrue(denied);
+        // new keys did not hand the client a fresh bucket
+        for (int i = 0; i < 4; i++) {
+            context.assertEquals(0L, rateLimiter.tryAcquire("client", now));
+        }
+        context.assertTrue(rateLimiter.tryAcquire("client", now) > 0);
+        // once a bucket is full again it can be replaced
+        context.assertEquals(0L, rateLimiter.tryAcquire("late-client", now + TimeUnit.SECONDS.toNanos(10)));
+    }
+
+    @Test
+    public void testBalanceStreamAfterDeposit(TestContext context) {
+        final Async async = context.async();
+        createAccount()
+                .map(this::getEntityId)
+                .subscribe(accountId -> balanceStream(context, accountId, () -> deposit(accountId, 1000).subscribe(), event -> {
+                    context.assertEquals(accountId, event.getLong("accountId"));
+                    context.assertEquals(1000, event.getInteger("balance"));
+                    context.assertEquals(1000, event.getInteger("amount"));
+                    context.assertEquals("deposit", event.getString("operation"));
+                    async.complete();
+                }));
+    }
+
+    @Test
+    public void testBalanceStreamCoalesced(TestContext context) {
+        final Async async = context.async();
+        redeploy(new JsonObject().put("stream.flush.interval.ms", 1000))
+                .flatMap(deployed -> createAccount())
+                .map(this::getEntityId)
+                .subscribe(accountId -> balanceStream(context, accountId, () -> deposit(accountId, 1000).flatMap(response -> withdraw(accountId, 300)).subscribe(), event -> {
+                    context.assertEquals(2, event.getInteger("coalesced"));
+                    context.assertEquals(700, event.getInteger("balance"));
+                    context.assertEquals(700, event.getInteger("amount"));
+                    context.assertEquals("withdraw", event.getString("operation"));
+                    async.complete();
+                }));
+    }
+
+    @Test
+    public void testBalanceStreamValidationIds(TestContext context) {
+        final Async async = context.async();
+        client.get(port, "localhost", "/balances/stream?ids=1,a")
+                .send(asyncResponse -> {
+                    context.assertEquals(400, asyncResponse.result().statusCode());
+                    async.complete();
+                });
+    }
+
+    @Test
+    public void testBalanceStreamValidationIdsBounds(TestContext context) {
+        final Async async = context.async();
+        StringBuilder tooMany = new StringBuilder("1");
+        for (int i = 2; i <= 1001; i++) {
+            tooMany.append(',').append(i);
+        }
+        Single.<HttpResponse<Buffer>>create(emitter -> client.get(port, "localhost", "/balances/stream?ids=1,18446744073709551617")
+                .send(asyncResponse -> emitter.onSuccess(asyncResponse.result())))
+                .doOnSuccess(response -> context.assertEquals(400, response.statusCode()))
+                .flatMap(response -> Single.<HttpResponse<Buffer>>create(emitter -> client.get(port, "localhost", "/balances/stream?ids=" + tooMany)
+                        .send(asyncResponse -> emitter.onSuccess(asyncResponse.result()))))
+                .subscribe(response -> {
+                    context.assertEquals(400, response.statusCode());
+                    async.complete();
+                });
+    }
+
+    private Integer freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private Single<String> redeploy(JsonObject config) {
+        DeploymentOptions options = new DeploymentOptions()
+                .setConfig(config.put("http.port", port));
+        return Single.create(emitter -> vertx.undeploy(deploymentId, undeployed ->
+                vertx.deployVerticle(MainVerticle.class.getName(), options, deployed -> {
+                    deploymentId = deployed.result();
+                    emitter.onSuccess(deploymentId);
+                })));
+    }
+
+    /**
+     * Reads /balances/stream over a plain socket, calls onSubscribed once the stream is open and onEvent with the
+     * first event. Each event is written as one chunk, so it can be found in the raw chunked response.
+     */
+    private void balanceStream(TestContext context, Long accountId, Runnable onSubscribed, Handler<JsonObject> onEvent) {
+        vertx.createNetClient().connect(port, "localhost", context.asyncAssertSuccess(socket -> {
+            Buffer received = Buffer.buffer();
+            socket.handler(chunk -> {
+                boolean subscribed = received.toString().contains(":subscribed\n\n");
+                received.appendBuffer(chunk);
+                String text = received.toString();
+                if (!subscribed && text.contains(":subscribed\n\n")) {
+                    context.assertTrue(text.startsWith("HTTP/1.1 200"));
+                    context.assertTrue(text.contains("content-type: text/event-stream"));
+                    onSubscribed.run();
+                }
+                int start = text.indexOf("data: ");
+                int end = start < 0 ? -1 : text.indexOf("\n\n", start);
+                if (end > 0) {
+                    socket.handler(null).close();
+                    onEvent.handle(new JsonObject(text.substring(start + 6, end)));
+                }
+            });
+            socket.write(String.format("GET /balances/stream?ids=%s HTTP/1.1\r\nHost: localhost\r\n\r\n", accountId));
+        }));
+    }
+
+    private Single<Long> delay(long millis) {
+        return Single.create(emitter -> vertx.setTimer(millis, emitter::onSuccess));
+    }
+
+    private Single<HttpResponse<Buffer>> send(HttpMethod method, Integer port, String uri, JsonObject body) {
+        return Single.create(emitter -> client.request(method, port, "localhost", uri)
+                .sendJson(body, asyncResponse -> emitter.onSuccess(asyncResponse.result())));
+    }
+
     private Single<HttpResponse<Buffer>> createAccount() {
         JsonObject account = new JsonObject()
                 .put("name", "acc1");
@@ -508,6 +1366,12 @@ public class ApiTest {
                 .sendJsonObject(account, asyncResponse -> emitter.onSuccess(asyncResponse.result())));
     }
 
+    private Single<HttpResponse<Buffer>> createAccountWithApiKey(String apiKey) {
+        return Single.create(emitter -> client.post(port, "localhost", "/accounts")
+                .putHeader("X-API-Key", apiKey)
+                .sendJsonObject(new JsonObject().put("name", "acc1"), asyncResponse -> emitter.onSuccess(asyncResponse.result())));
+    }
+
     private Single<HttpResponse<Buffer>> getAccount(Long accountId) {
         return Single.create(emitter -> client.get(port, "localhost", String.format("/accounts/%s", accountId))
                 .send(asyncResponse -> emitter.onSuccess(asyncResponse.result())));
@@ -537,6 +1401,16 @@ public class ApiTest {
                 .sendJsonObject(balanceOperation, asyncResponse -> emitter.onSuccess(asyncResponse.result())));
     }
 
+    private Single<HttpResponse<Buffer>> summary(Long accountId, String query) {
+        return Single.create(emitter -> client.get(port, "localhost", String.format("/accounts/%s/summary?%s", accountId, query))
+                .send(asyncResponse -> emitter.onSuccess(asyncResponse.result())));
+    }
+
+    private Single<HttpResponse<Buffer>> balances(JsonArray accountIds) {
+        return Single.create(emitter -> client.post(port, "localhost", "/accounts/balances")
+                .sendJsonObject(new JsonObject().put("ids", accountIds), asyncResponse -> emitter.onSuccess(asyncResponse.result())));
+    }
+
     private Single<HttpResponse<Buffer>> transfer(Long senderAccountId, Long receiverAccountId, Integer amount) {
         JsonObject transfer = new JsonObject()
                 .put("senderAccountId", senderAccountId)